@@ -0,0 +1,68 @@
+package com.mts;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.websocket.common.frames.TextFrame;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+/**
+ * Cost of turning one chat broadcast into a text frame for every viewer.
+ * perRecipientEncode is what Jetty's sendString(String) does for each
+ * recipient; encodeOnce is the shared OutboundFrame path.
+ * Run with -prof gc and compare gc.alloc.rate.norm (bytes per broadcast).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcastEncodeBenchmark {
+
+    @Param({"1000", "10000"})
+    public int viewers;
+
+    private final Gson gson = new Gson();
+    private JsonObject broadcast;
+
+    @Setup
+    public void setUp() {
+        broadcast = new JsonObject();
+        broadcast.addProperty("type", "chat");
+        broadcast.addProperty("author", "viewer_42");
+        broadcast.addProperty("text", "That last play was unbelievable &#x2F;&#x2F; GG everyone");
+        broadcast.addProperty("timestamp", "2025-12-18T20:15:42.123456");
+    }
+
+    @Benchmark
+    public void perRecipientEncode(Blackhole bh) {
+        String json = gson.toJson(broadcast);
+        for (int i = 0; i < viewers; i++) {
+            bh.consume(new TextFrame().setPayload(json));
+        }
+    }
+
+    @Benchmark
+    public void encodeOnce(Blackhole bh) {
+        OutboundFrame frame = OutboundFrame.of(gson.toJson(broadcast));
+        for (int i = 0; i < viewers; i++) {
+            TextFrame textFrame = new TextFrame();
+            textFrame.setPayload(frame.payloadView());
+            bh.consume(textFrame);
+        }
+    }
+}
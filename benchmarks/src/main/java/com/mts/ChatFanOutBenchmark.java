@@ -0,0 +1,90 @@
+package com.mts;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.websocket.api.Session;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One chat message fanned out to a room of mock sessions.
+ * onMessageChat is the whole handler path: decode, journal, escape,
+ * serialize, then queue and "send" to every viewer. broadcast is only the
+ * serialize-and-fan-out part. Sends complete instantly, so this is CPU cost
+ * per message, not network behaviour. wire picks whether the audience
+ * speaks JSON or the binary protocol.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ChatFanOutBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int audience;
+
+    @Param({"json", "binary"})
+    public String wire;
+
+    private Path journal;
+    private WebSocketHandler handler;
+    private Session sender;
+    private ChatRoom room;
+    private String chatFrame;
+    private long seq;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        // Keep the chat journal out of the working directory (read when ChatJournal loads)
+        journal = Files.createTempFile("bench-chat", ".txt");
+        System.setProperty("metastream.journal.file", journal.toString());
+        // One sender at full speed would otherwise be rate limited after its first burst
+        System.setProperty("metastream.chat.rate.perConnection", "0");
+        System.setProperty("metastream.chat.rate.perIp", "0");
+        System.setProperty("metastream.chat.rate.perRoom", "0");
+
+        handler = new WebSocketHandler();
+        for (int i = 0; i < audience; i++) {
+            handler.onConnect("binary".equals(wire) ? MockSessions.openBinary() : MockSessions.open());
+        }
+        sender = MockSessions.open();
+        handler.onConnect(sender);
+        room = WebSocketHandler.getRoom(SessionRegistry.DEFAULT_STREAM_KEY);
+
+        chatFrame = "{\"type\":\"chat\",\"author\":\"viewer_42\",\"text\":\"That last play was <b>unbelievable</b> GG\"}";
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        ChatJournal.getInstance().close();
+        Files.deleteIfExists(journal);
+    }
+
+    @Benchmark
+    public void onMessageChat() {
+        handler.onMessage(sender, chatFrame);
+    }
+
+    @Benchmark
+    public int broadcast() {
+        return room.broadcast(ChatWireCodec.chat(++seq, Instant.now(), "viewer_42",
+                "That last play was &lt;b&gt;unbelievable&lt;&#x2F;b&gt; GG"));
+    }
+}
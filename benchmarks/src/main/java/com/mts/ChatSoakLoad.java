@@ -0,0 +1,351 @@
+package com.mts;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Chat load and soak test (not a JMH benchmark).
+ * Starts the backend in this JVM next to a stand-in for the media server's
+ * /health, starts a stream, then grows the audience step by step
+ * (load.clients=1000,2000,5000) while a few senders chat at a fixed rate.
+ *
+ * Every chat text carries its send time and a message id, and clients run
+ * in the same JVM as the server, so delivery latency is measured end to end
+ * on one clock. A message counts as lost for a viewer that was connected
+ * when it was sent but never received it (slow-consumer drops, evictions).
+ * Heap and GC figures are for the whole JVM, clients included.
+ *
+ * Options (-Dname=value): load.clients, load.senders, load.rate,
+ * load.seconds, load.reportSeconds, load.drainMs, load.port, load.mediaPort,
+ * load.batch. Backend logging defaults to WARN (-Dmetastream.log.level), and
+ * the per-IP and per-room chat limits default to off.
+ */
+public class ChatSoakLoad {
+
+    private static final String ROOM = "soak";
+    private static final String MARK = "soak:";
+
+    // Shared by all clients
+    private static final AtomicLong nextMessageId = new AtomicLong();
+    private static final AtomicInteger openClients = new AtomicInteger();
+    private static final LongAdder received = new LongAdder();
+    private static final LongAdder closed = new LongAdder();
+    private static final SoakLatencyRecorder intervalLatency = new SoakLatencyRecorder();
+    private static final SoakLatencyRecorder stepLatency = new SoakLatencyRecorder();
+
+    /**
+     * A viewer socket: counts the chat messages it receives and their latency.
+     * Messages sent before it joined (history replay) are ignored.
+     */
+    private static final class SoakClient implements WebSocket.Listener {
+        private final long joinedAtId = nextMessageId.get();
+        private final StringBuilder partial = new StringBuilder();
+        private volatile boolean open = true;
+        private volatile CompletableFuture<WebSocket> lastSend = CompletableFuture.completedFuture(null);
+        WebSocket socket;
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            long now = System.nanoTime();
+            partial.append(data);
+            if (last) {
+                count(partial, now);
+                partial.setLength(0);
+            }
+            webSocket.request(1);
+            return null;
+        }
+
+        /**
+         * A frame may be one chat message or a batch of them
+         */
+        private void count(CharSequence frame, long now) {
+            String text = frame.toString();
+            int at = text.indexOf(MARK);
+            while (at >= 0) {
+                int start = at + MARK.length();
+                int split = text.indexOf(':', start);
+                int end = split;
+                while (end + 1 < text.length() && Character.isDigit(text.charAt(end + 1))) {
+                    end++;
+                }
+                long sentNanos = Long.parseLong(text, start, split, 10);
+                long id = Long.parseLong(text, split + 1, end + 1, 10);
+                if (id >= joinedAtId) {
+                    received.increment();
+                    long micros = TimeUnit.NANOSECONDS.toMicros(now - sentNanos);
+                    intervalLatency.record(micros);
+                    stepLatency.record(micros);
+                }
+                at = text.indexOf(MARK, end);
+            }
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+            gone();
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket webSocket, Throwable error) {
+            gone();
+        }
+
+        private void gone() {
+            if (open) {
+                open = false;
+                openClients.decrementAndGet();
+                closed.increment();
+            }
+        }
+
+        /**
+         * Send one chat message unless the previous one is still being written
+         * @return false if skipped
+         */
+        boolean chat() {
+            if (!open || !lastSend.isDone()) {
+                return false;
+            }
+            long id = nextMessageId.getAndIncrement();
+            String text = MARK + System.nanoTime() + ":" + id;
+            lastSend = socket.sendText("{\"type\":\"chat\",\"text\":\"" + text + "\"}", true);
+            return true;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String steps = System.getProperty("load.clients", "1000,2000,5000");
+        int senderCount = Integer.getInteger("load.senders", 10);
+        int rate = Integer.getInteger("load.rate", 20);
+        int seconds = Integer.getInteger("load.seconds", 30);
+        int reportSeconds = Integer.getInteger("load.reportSeconds", 10);
+        long drainMs = Long.getLong("load.drainMs", 2000);
+        int port = Integer.getInteger("load.port", 18080);
+        int mediaPort = Integer.getInteger("load.mediaPort", 18000);
+        boolean batch = Boolean.getBoolean("load.batch");
+
+        // 1. Stand-in media server and the backend, with logs and history in a temp directory
+        setDefault("metastream.log.level", "WARN"); // one INFO line per connect drowns the report
+        // Every client comes from 127.0.0.1, so IP and room chat limits would cap the offered rate
+        setDefault("metastream.chat.rate.perIp", "0");
+        setDefault("metastream.chat.rate.perRoom", "0");
+        HttpServer media = startMediaStub(mediaPort);
+        Path scratch = Files.createTempDirectory("soak");
+        System.setProperty("metastream.port", String.valueOf(port));
+        System.setProperty("metastream.media.url", "http://127.0.0.1:" + mediaPort);
+        System.setProperty("metastream.journal.file", scratch.resolve("chat_log.txt").toString());
+        System.setProperty("metastream.streamLog.file", scratch.resolve("stream_log.txt").toString());
+        System.setProperty("metastream.history.dir", scratch.resolve("session_history").toString());
+        Main.main(new String[0]);
+
+        String base = "http://127.0.0.1:" + port;
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        HttpClient http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(clientExecutor)
+                .build();
+        post(http, base + "/api/stream/start", "{\"username\":\"soak\",\"streamKey\":\"" + ROOM + "\"}");
+
+        // 2. Grow the audience one step at a time; the first clients are the senders
+        String wsUrl = "ws://127.0.0.1:" + port + "/ws?room=" + ROOM + (batch ? "&batch=1" : "");
+        List<SoakClient> clients = new ArrayList<>();
+        List<String> summary = new ArrayList<>();
+        for (String step : steps.split(",")) {
+            int target = Integer.parseInt(step.trim());
+            connect(http, wsUrl, clients, target);
+            Thread.sleep(500); // let the last identifies land
+            List<SoakClient> senders = clients.subList(0, Math.min(senderCount, clients.size()));
+            summary.add(runStep(senders, rate, seconds, reportSeconds, drainMs));
+        }
+
+        System.out.println();
+        System.out.println("clients  sent      expected   delivered  lost     loss%   p50ms   p99ms   p999ms  maxms    heapMB  gcMs");
+        summary.forEach(System.out::println);
+
+        post(http, base + "/api/stream/stop?key=" + ROOM, "");
+        media.stop(0);
+        System.exit(0); // Spark's threads are not daemons
+    }
+
+    private static void connect(HttpClient http, String wsUrl, List<SoakClient> clients, int target)
+            throws InterruptedException {
+        Semaphore handshakes = new Semaphore(256); // don't flood the acceptor
+        AtomicInteger failures = new AtomicInteger();
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = clients.size(); i < target; i++) {
+            handshakes.acquire();
+            SoakClient client = new SoakClient();
+            String identify = "{\"type\":\"identify\",\"username\":\"soak" + i + "\"}";
+            pending.add(http.newWebSocketBuilder()
+                    .buildAsync(URI.create(wsUrl), client)
+                    .thenCompose(ws -> {
+                        client.socket = ws;
+                        openClients.incrementAndGet();
+                        return ws.sendText(identify, true);
+                    })
+                    .handle((ws, error) -> {
+                        handshakes.release();
+                        if (error != null) {
+                            failures.incrementAndGet();
+                        } else {
+                            synchronized (clients) {
+                                clients.add(client);
+                            }
+                        }
+                        return null;
+                    }));
+        }
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture[0])).join();
+        System.out.printf("%nConnected %d clients in %d ms (%d failed)%n", clients.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), failures.get());
+    }
+
+    /**
+     * Chat at a fixed rate for the step, wait for stragglers, then summarise
+     */
+    private static String runStep(List<SoakClient> senders, int rate, int seconds, int reportSeconds, long drainMs)
+            throws InterruptedException {
+        stepLatency.reset();
+        intervalLatency.reset();
+        long receivedBefore = received.sum();
+        long gcBefore = gcMillis();
+        LongAdder sent = new LongAdder();
+        LongAdder skipped = new LongAdder();
+        LongAdder expected = new LongAdder();
+        AtomicLong peakHeap = new AtomicLong();
+        int clientsAtStart = openClients.get();
+
+        ScheduledExecutorService timer = Executors.newScheduledThreadPool(2);
+        AtomicInteger turn = new AtomicInteger();
+        timer.scheduleAtFixedRate(() -> {
+            SoakClient sender = senders.get(Math.floorMod(turn.getAndIncrement(), senders.size()));
+            int audience = openClients.get(); // every viewer in the room, the sender included
+            if (sender.chat()) {
+                sent.increment();
+                expected.add(audience);
+            } else {
+                skipped.increment();
+            }
+        }, 0, Math.max(1, TimeUnit.SECONDS.toNanos(1) / Math.max(1, rate)), TimeUnit.NANOSECONDS);
+
+        AtomicLong lastReceived = new AtomicLong(receivedBefore);
+        AtomicLong lastGc = new AtomicLong(gcBefore);
+        AtomicInteger elapsed = new AtomicInteger();
+        timer.scheduleAtFixedRate(() -> {
+            peakHeap.accumulateAndGet(heapUsed().getUsed(), Math::max);
+            if (elapsed.incrementAndGet() % reportSeconds != 0) {
+                return;
+            }
+            long now = received.sum();
+            long gc = gcMillis();
+            MemoryUsage heap = heapUsed();
+            System.out.printf("[%4ds] clients %d  sent %d  delivered/s %.0f  p50 %.2f  p99 %.2f  p999 %.2f ms"
+                            + "  heap %d/%d MB  gc %d ms  threads %d%n",
+                    elapsed.get(), openClients.get(), sent.sum(), (now - lastReceived.get()) / (double) reportSeconds,
+                    intervalLatency.percentileMillis(0.50), intervalLatency.percentileMillis(0.99),
+                    intervalLatency.percentileMillis(0.999), heap.getUsed() >> 20, heap.getCommitted() >> 20,
+                    gc - lastGc.get(), ServerThreads.getPlatformThreadCount());
+            intervalLatency.reset();
+            lastReceived.set(now);
+            lastGc.set(gc);
+        }, 1, 1, TimeUnit.SECONDS);
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        timer.shutdownNow();
+        timer.awaitTermination(5, TimeUnit.SECONDS);
+        Thread.sleep(drainMs);
+
+        long delivered = received.sum() - receivedBefore;
+        long lost = Math.max(0, expected.sum() - delivered);
+        if (skipped.sum() > 0) {
+            System.out.printf("Senders fell behind: %d messages skipped%n", skipped.sum());
+        }
+        if (closed.sum() > 0) {
+            System.out.printf("Clients closed by the server so far: %d%n", closed.sum());
+        }
+        return String.format("%-8d %-9d %-10d %-10d %-8d %-7.3f %-7.2f %-7.2f %-7.2f %-8.2f %-7d %d",
+                clientsAtStart, sent.sum(), expected.sum(), delivered, lost,
+                expected.sum() == 0 ? 0 : 100.0 * lost / expected.sum(),
+                stepLatency.percentileMillis(0.50), stepLatency.percentileMillis(0.99),
+                stepLatency.percentileMillis(0.999), stepLatency.maxMillis(),
+                peakHeap.get() >> 20, gcMillis() - gcBefore);
+    }
+
+    private static void setDefault(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+
+    /**
+     * Answers /health the way the real media server does when it is up
+     */
+    private static HttpServer startMediaStub(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        byte[] body = "{\"status\":\"ok\",\"streaming\":true,\"streamActive\":true}".getBytes(StandardCharsets.UTF_8);
+        server.createContext("/health", exchange -> {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    private static void post(HttpClient http, String url, String json) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofSeconds(10))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+        HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException(url + " -> HTTP " + response.statusCode() + ": " + response.body());
+        }
+    }
+
+    private static MemoryUsage heapUsed() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+}
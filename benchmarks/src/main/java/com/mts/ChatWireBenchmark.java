@@ -0,0 +1,95 @@
+package com.mts;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+/**
+ * JSON against the binary chat protocol.
+ * encodeJson is the broadcast encoding before the binary protocol;
+ * encodeBoth is ChatWireCodec.chat, which builds both forms.
+ * decodeJson / decodeBinary parse the same chat message sent by a client.
+ * Setup prints the payload sizes of each form.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatWireBenchmark {
+
+    private static final String AUTHOR = "viewer_42";
+    private static final String TEXT = "That last play was unbelievable &#x2F;&#x2F; GG everyone";
+
+    private final Gson gson = new Gson();
+    private final InboundMessageCodec codec = new InboundMessageCodec();
+    private final Instant at = Instant.now();
+    private String jsonChat;
+    private byte[] binaryChat;
+    private long seq;
+
+    @Setup
+    public void setUp() {
+        jsonChat = "{\"type\":\"chat\",\"author\":\"" + AUTHOR + "\",\"text\":\"" + TEXT + "\"}";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(ChatWireCodec.IN_CHAT);
+        byte[] text = TEXT.getBytes(StandardCharsets.UTF_8);
+        out.write(text.length);
+        out.writeBytes(text);
+        out.write(AUTHOR.length());
+        out.writeBytes(AUTHOR.getBytes(StandardCharsets.UTF_8));
+        binaryChat = out.toByteArray();
+
+        OutboundFrame frame = ChatWireCodec.chat(12345, at, AUTHOR, TEXT);
+        OutboundFrame known = frame.forBinaryClient(new ChatWireCodec.KnownAuthors());
+        ChatWireCodec.KnownAuthors seen = new ChatWireCodec.KnownAuthors();
+        frame.forBinaryClient(seen);
+        OutboundFrame repeat = frame.forBinaryClient(seen);
+        System.out.printf("%nBroadcast bytes: json %d, binary %d (first from this author %d)%n",
+                frame.getPayloadLength(), repeat.getPayloadLength(), known.getPayloadLength());
+        System.out.printf("Inbound chat bytes: json %d, binary %d%n", jsonChat.length(), binaryChat.length);
+    }
+
+    @Benchmark
+    public OutboundFrame encodeJson() {
+        JsonObject broadcast = new JsonObject();
+        broadcast.addProperty("type", "chat");
+        broadcast.addProperty("author", AUTHOR);
+        broadcast.addProperty("text", TEXT);
+        broadcast.addProperty("timestamp", ChatWireCodec.isoTimestamp(at));
+        broadcast.addProperty("seq", ++seq);
+        return OutboundFrame.of(gson.toJson(broadcast));
+    }
+
+    @Benchmark
+    public OutboundFrame encodeBoth() {
+        return ChatWireCodec.chat(++seq, at, AUTHOR, TEXT);
+    }
+
+    @Benchmark
+    public void decodeJson(Blackhole bh) {
+        bh.consume(codec.decode(jsonChat).getText().length());
+    }
+
+    @Benchmark
+    public void decodeBinary(Blackhole bh) {
+        bh.consume(codec.decode(binaryChat, 0, binaryChat.length).getText().length());
+    }
+}
@@ -0,0 +1,66 @@
+package com.mts;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * HTML escaping on the chat texts the handler actually sees:
+ * "plain" has nothing to escape, "markup" escapes on nearly every word,
+ * "max" is a 500 char message (the longest the codec lets through).
+ * replaceChain is the old six-String.replace version; singlePass is
+ * ChatSanitizer.escapeHtml. Compare gc.alloc.rate.norm with -prof gc.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EscapeHtmlBenchmark {
+
+    @Param({"plain", "markup", "max"})
+    public String text;
+
+    private String input;
+
+    @Setup
+    public void setUp() {
+        switch (text) {
+            case "plain":
+                input = "Hello from the back row! Loving the stream tonight";
+                break;
+            case "markup":
+                input = "<b>GG</b> & \"wow\" <i>that's</i> it / <script>alert('x')</script>";
+                break;
+            default:
+                input = "Long message with a <tag> now and then & some 'quotes' ".repeat(10).substring(0, 500);
+                break;
+        }
+    }
+
+    @Benchmark
+    public String replaceChain() {
+        return input.replace("&", "&amp;")
+                    .replace("<", "&lt;")
+                    .replace(">", "&gt;")
+                    .replace("\"", "&quot;")
+                    .replace("'", "&#x27;")
+                    .replace("/", "&#x2F;");
+    }
+
+    @Benchmark
+    public String singlePass() {
+        return ChatSanitizer.escapeHtml(input);
+    }
+}
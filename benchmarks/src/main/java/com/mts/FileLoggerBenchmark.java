@@ -0,0 +1,74 @@
+package com.mts;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * FileLogger append cost as seen by the caller.
+ * logChat only queues for the journal's writer thread (it blocks once the
+ * queue is full unless metastream.journal.offerTimeoutMs opts in to
+ * dropping, so by default sustained throughput is bounded by the disk);
+ * writeLog opens, appends and closes stream_log.txt on every call.
+ * Both files go to a temp directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileLoggerBenchmark {
+
+    private Path dir;
+    private FileLogger fileLogger;
+    private StreamSession session;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        // Both paths are read when the classes load, so set them first
+        dir = Files.createTempDirectory("bench-logs");
+        System.setProperty("metastream.journal.file", dir.resolve("chat_log.txt").toString());
+        System.setProperty("metastream.streamLog.file", dir.resolve("stream_log.txt").toString());
+
+        fileLogger = new FileLogger();
+        session = new StreamSession(new User("bench_streamer"));
+        session.startSession();
+        session.stopSession();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        ChatJournal.getInstance().close();
+        try (var files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    @Benchmark
+    public void logChat() {
+        fileLogger.logChat("viewer_42", "That last play was unbelievable GG everyone");
+    }
+
+    @Benchmark
+    public void writeLog() {
+        fileLogger.writeLog(session);
+    }
+}
@@ -0,0 +1,191 @@
+package com.mts;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+/**
+ * Load test for the thread execution modes (not a JMH benchmark).
+ * Opens N mostly-idle WebSocket viewers against a running backend, then
+ * measures HTTP request throughput and latency while they stay connected,
+ * and reads the server's thread counts from /api/health.
+ *
+ * Run it once against a backend started with -Dmetastream.threads=CLASSIC
+ * and once with VIRTUAL (Java 21) and compare the two reports.
+ *
+ * Options (-Dname=value): load.url, load.clients, load.concurrency,
+ * load.seconds, load.warmupSeconds, load.path
+ */
+public class IdleClientsLoad {
+
+    private static final Gson gson = new Gson();
+
+    public static void main(String[] args) throws Exception {
+        String base = System.getProperty("load.url", "http://localhost:8080");
+        int clients = Integer.getInteger("load.clients", 10000);
+        int concurrency = Integer.getInteger("load.concurrency", 64);
+        int seconds = Integer.getInteger("load.seconds", 30);
+        int warmupSeconds = Integer.getInteger("load.warmupSeconds", 5);
+        String path = System.getProperty("load.path", "/api/stream/sessions");
+
+        HttpClient http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+
+        System.out.printf("Server before: %s%n", threads(http, base));
+
+        // 1. Idle viewers: connect, identify, then just sit there
+        List<WebSocket> sockets = connectIdle(http, base.replaceFirst("^http", "ws") + "/ws", clients);
+        System.out.printf("Idle viewers connected: %d / %d%n", sockets.size(), clients);
+        System.out.printf("Server with viewers: %s%n", threads(http, base));
+
+        // 2. Request load while they stay connected
+        URI target = URI.create(base + path);
+        drive(http, target, concurrency, warmupSeconds, false);
+        drive(http, target, concurrency, seconds, true);
+        System.out.printf("Server under load: %s%n", threads(http, base));
+
+        for (WebSocket socket : sockets) {
+            socket.abort();
+        }
+    }
+
+    private static List<WebSocket> connectIdle(HttpClient http, String wsUrl, int clients) throws InterruptedException {
+        List<WebSocket> sockets = new ArrayList<>(clients);
+        Semaphore handshakes = new Semaphore(256); // don't flood the acceptor
+        AtomicInteger failures = new AtomicInteger();
+        List<CompletableFuture<Void>> pending = new ArrayList<>(clients);
+        WebSocket.Listener quiet = new WebSocket.Listener() {
+            @Override
+            public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+                webSocket.request(1);
+                return null;
+            }
+        };
+
+        long start = System.nanoTime();
+        for (int i = 0; i < clients; i++) {
+            handshakes.acquire();
+            String identify = "{\"type\":\"identify\",\"username\":\"idle" + i + "\"}";
+            pending.add(http.newWebSocketBuilder()
+                    .buildAsync(URI.create(wsUrl), quiet)
+                    .thenCompose(ws -> ws.sendText(identify, true))
+                    .handle((ws, error) -> {
+                        handshakes.release();
+                        if (error != null) {
+                            failures.incrementAndGet();
+                        } else {
+                            synchronized (sockets) {
+                                sockets.add(ws);
+                            }
+                        }
+                        return null;
+                    }));
+        }
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture[0])).join();
+        System.out.printf("Connected in %d ms (%d failed)%n",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), failures.get());
+        return sockets;
+    }
+
+    /**
+     * Closed-loop load: each worker sends the next request as soon as the last one returns
+     */
+    private static long[] drive(HttpClient http, URI target, int concurrency, int seconds, boolean report)
+            throws InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(target).timeout(Duration.ofSeconds(10)).GET().build();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        AtomicLong errors = new AtomicLong();
+        long[][] perWorker = new long[concurrency][];
+        int[] counts = new int[concurrency];
+        Thread[] workers = new Thread[concurrency];
+
+        for (int w = 0; w < concurrency; w++) {
+            final int id = w;
+            workers[w] = new Thread(() -> {
+                long[] samples = new long[1 << 16];
+                int n = 0;
+                while (System.nanoTime() < deadline) {
+                    long t0 = System.nanoTime();
+                    try {
+                        HttpResponse<Void> response = http.send(request, HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() != 200) {
+                            errors.incrementAndGet();
+                            continue;
+                        }
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                        continue;
+                    }
+                    if (n == samples.length) {
+                        samples = Arrays.copyOf(samples, n * 2);
+                    }
+                    samples[n++] = System.nanoTime() - t0;
+                }
+                perWorker[id] = samples;
+                counts[id] = n;
+            }, "load-" + w);
+            workers[w].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        long[] all = new long[total];
+        int offset = 0;
+        for (int w = 0; w < concurrency; w++) {
+            System.arraycopy(perWorker[w], 0, all, offset, counts[w]);
+            offset += counts[w];
+        }
+        Arrays.sort(all);
+
+        if (report) {
+            System.out.printf("Requests: %d in %ds = %.0f req/s, %d errors%n",
+                    total, seconds, total / (double) seconds, errors.get());
+            System.out.printf("Latency ms: p50 %.2f  p99 %.2f  p99.9 %.2f  max %.2f%n",
+                    millis(all, 0.50), millis(all, 0.99), millis(all, 0.999),
+                    all.length == 0 ? 0 : all[all.length - 1] / 1e6);
+        }
+        return all;
+    }
+
+    private static double millis(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private static String threads(HttpClient http, String base) {
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(base + "/api/health"))
+                    .timeout(Duration.ofSeconds(10)).GET().build();
+            JsonObject health = gson.fromJson(http.send(request, HttpResponse.BodyHandlers.ofString()).body(),
+                    JsonObject.class);
+            return String.valueOf(health.get("threads"));
+        } catch (Exception e) {
+            return "unavailable (" + e.getMessage() + ")";
+        }
+    }
+}
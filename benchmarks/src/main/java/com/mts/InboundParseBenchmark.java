@@ -0,0 +1,78 @@
+package com.mts;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+/**
+ * Inbound frame parsing: the old gson tree parse in onMessage/handleChat
+ * against the streaming InboundMessageCodec.
+ * "oversized" carries a 20,000 char text field that ends up cut to 500.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InboundParseBenchmark {
+
+    @Param({"typical", "oversized"})
+    public String frame;
+
+    private final Gson gson = new Gson();
+    private final InboundMessageCodec codec = new InboundMessageCodec();
+    private String message;
+
+    @Setup
+    public void setUp() {
+        String text = "typical".equals(frame)
+                ? "  Hello from the back row! Loving the stream \\u2764  "
+                : "x".repeat(20_000);
+        message = "{\"type\":\"chat\",\"author\":\"viewer_42\",\"text\":\"" + text + "\"}";
+    }
+
+    @Benchmark
+    public void treeParse(Blackhole bh) {
+        JsonObject json = gson.fromJson(message, JsonObject.class);
+        String type = json.has("type") && !json.get("type").isJsonNull()
+                ? json.get("type").getAsString()
+                : "unknown";
+        String text = "";
+        if (json.has("text") && !json.get("text").isJsonNull()) {
+            text = json.get("text").getAsString().trim();
+        }
+        String author = null;
+        if (json.has("author") && !json.get("author").isJsonNull()) {
+            author = json.get("author").getAsString().trim();
+        }
+        if (text.length() > 500) {
+            text = text.substring(0, 500);
+        }
+        bh.consume(type);
+        bh.consume(author);
+        bh.consume(text);
+    }
+
+    @Benchmark
+    public void streamingDecode(Blackhole bh) {
+        InboundMessage inbound = codec.decode(message);
+        bh.consume(inbound.getType());
+        bh.consume(inbound.getAuthor());
+        bh.consume(inbound.getText().toString());
+    }
+}
@@ -0,0 +1,139 @@
+package com.mts;
+
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.UpgradeRequest;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+
+/**
+ * In-memory stand-ins for Jetty WebSocket sessions, so the handler and
+ * ClientConnection run their real code without sockets.
+ * Every sendString/sendBytes completes its callback immediately (an infinitely
+ * fast network); each session has its own address so rooms hold distinct members.
+ */
+final class MockSessions {
+
+    private static final AtomicInteger ports = new AtomicInteger(10000);
+
+    private MockSessions() {
+    }
+
+    /**
+     * An open session with no query parameters
+     */
+    static Session open() {
+        return open(Collections.emptyMap());
+    }
+
+    /**
+     * An open session that negotiated the binary chat protocol
+     */
+    static Session openBinary() {
+        return open(Collections.emptyMap(), List.of(ChatWireCodec.BINARY_PROTOCOL));
+    }
+
+    /**
+     * An open session whose upgrade request carries the given query parameters
+     */
+    static Session open(Map<String, List<String>> parameters) {
+        return open(parameters, Collections.emptyList());
+    }
+
+    private static Session open(Map<String, List<String>> parameters, List<String> subProtocols) {
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", ports.getAndIncrement() & 0xFFFF);
+        RemoteEndpoint remote = proxy(RemoteEndpoint.class, (name, args) -> {
+            if (("sendString".equals(name) || "sendBytes".equals(name))
+                    && args.length == 2 && args[1] instanceof WriteCallback) {
+                ((WriteCallback) args[1]).writeSuccess();
+            } else if ("getInetSocketAddress".equals(name)) {
+                return address;
+            }
+            return null;
+        });
+        UpgradeRequest upgrade = proxy(UpgradeRequest.class, (name, args) -> {
+            switch (name) {
+                case "getParameterMap":
+                    return parameters;
+                case "getSubProtocols":
+                    return subProtocols;
+                case "getProtocolVersion":
+                    return "13";
+                default:
+                    return null;
+            }
+        });
+        return proxy(Session.class, (name, args) -> {
+            switch (name) {
+                case "isOpen":
+                    return true;
+                case "getRemote":
+                    return remote;
+                case "getRemoteAddress":
+                    return address;
+                case "getUpgradeRequest":
+                    return upgrade;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    private interface Answer {
+        Object answer(String method, Object[] args);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Answer answer) {
+        return (T) Proxy.newProxyInstance(MockSessions.class.getClassLoader(), new Class<?>[] {type},
+                (self, method, args) -> {
+                    Object[] actual = args != null ? args : new Object[0];
+                    switch (method.getName()) {
+                        case "hashCode":
+                            return System.identityHashCode(self);
+                        case "equals":
+                            return self == actual[0];
+                        case "toString":
+                            return type.getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(self));
+                        default:
+                            break;
+                    }
+                    Object result = answer.answer(method.getName(), actual);
+                    return result != null ? result : defaultValue(method.getReturnType());
+                });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        }
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == double.class) {
+            return 0d;
+        }
+        if (type == float.class) {
+            return 0f;
+        }
+        if (type == short.class) {
+            return (short) 0;
+        }
+        if (type == byte.class) {
+            return (byte) 0;
+        }
+        return (char) 0;
+    }
+}
@@ -0,0 +1,49 @@
+package com.mts;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * StreamSession.getDuration formatting, called on every session/status poll.
+ * "live" reads the clock on each call; "stopped" uses the stored end time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionDurationBenchmark {
+
+    private StreamSession live;
+    private StreamSession stopped;
+
+    @Setup
+    public void setUp() {
+        live = new StreamSession(new User("bench_live"));
+        live.startSession();
+        stopped = new StreamSession(new User("bench_stopped"));
+        stopped.startSession();
+        stopped.stopSession();
+    }
+
+    @Benchmark
+    public String live() {
+        return live.getDuration();
+    }
+
+    @Benchmark
+    public String stopped() {
+        return stopped.getDuration();
+    }
+}
@@ -0,0 +1,85 @@
+package com.mts;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram for the load tests, in microseconds.
+ * Buckets are log-linear (16 per power of two), so any value is reported
+ * within about 6% and recording never allocates.
+ */
+final class SoakLatencyRecorder {
+
+    private static final int SUB_BUCKETS = 16;
+    private static final int MAX_EXPONENT = 40; // ~12 days in micros
+
+    private final AtomicLongArray counts = new AtomicLongArray((MAX_EXPONENT - 2) * SUB_BUCKETS);
+
+    void record(long micros) {
+        counts.incrementAndGet(indexOf(Math.max(0, micros)));
+    }
+
+    void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    long count() {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Upper bound of the bucket holding the given quantile, in milliseconds
+     */
+    double percentileMillis(double quantile) {
+        long[] snapshot = new long[counts.length()];
+        long total = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return valueAt(i) / 1000.0;
+            }
+        }
+        return valueAt(snapshot.length - 1) / 1000.0;
+    }
+
+    double maxMillis() {
+        for (int i = counts.length() - 1; i >= 0; i--) {
+            if (counts.get(i) > 0) {
+                return valueAt(i) / 1000.0;
+            }
+        }
+        return 0;
+    }
+
+    private int indexOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = Math.min(63 - Long.numberOfLeadingZeros(micros), MAX_EXPONENT - 1);
+        int sub = (int) (micros >>> (exponent - 4)) & (SUB_BUCKETS - 1);
+        return Math.min((exponent - 3) * SUB_BUCKETS + sub, counts.length() - 1);
+    }
+
+    private static long valueAt(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + 3;
+        int sub = index % SUB_BUCKETS;
+        return ((SUB_BUCKETS + (long) sub) << (exponent - 4)) + (1L << (exponent - 4)) - 1;
+    }
+}
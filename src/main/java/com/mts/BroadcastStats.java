@@ -0,0 +1,90 @@
+package com.mts;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for the chat broadcast path.
+ * Besides frame and byte totals, this samples the heap bytes the
+ * broadcasting thread allocated while fanning a message out, so the cost
+ * of a broadcast per recipient can be read straight off /api/chat/connections.
+ */
+public final class BroadcastStats {
+
+    private static final boolean TRACK_ALLOCATIONS = Config.getBoolean("metastream.ws.trackAllocations", true);
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+    private static final LongAdder broadcasts = new LongAdder();
+    private static final LongAdder recipients = new LongAdder();
+    private static final LongAdder encodedBytes = new LongAdder();
+    private static final LongAdder allocatedBytes = new LongAdder();
+    private static final LongAdder measuredBroadcasts = new LongAdder();
+
+    private BroadcastStats() {
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (TRACK_ALLOCATIONS && bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemorySupported()) {
+                sunBean.setThreadAllocatedMemoryEnabled(true);
+                return sunBean;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return allocation counter of the current thread, or -1 when tracking is off
+     */
+    public static long startMeasure() {
+        return THREADS != null ? THREADS.getCurrentThreadAllocatedBytes() : -1L;
+    }
+
+    /**
+     * Record one finished broadcast
+     * @param startAllocated value returned by {@link #startMeasure()} before encoding
+     */
+    public static void record(int recipientCount, int payloadBytes, long startAllocated) {
+        broadcasts.increment();
+        recipients.add(recipientCount);
+        encodedBytes.add(payloadBytes);
+        if (startAllocated >= 0) {
+            allocatedBytes.add(THREADS.getCurrentThreadAllocatedBytes() - startAllocated);
+            measuredBroadcasts.increment();
+        }
+    }
+
+    public static long getBroadcasts() {
+        return broadcasts.sum();
+    }
+
+    public static long getRecipients() {
+        return recipients.sum();
+    }
+
+    public static long getEncodedBytes() {
+        return encodedBytes.sum();
+    }
+
+    public static long getAllocatedBytes() {
+        return allocatedBytes.sum();
+    }
+
+    /**
+     * Average heap bytes allocated per broadcast (0 if never measured)
+     */
+    public static long getAllocatedBytesPerBroadcast() {
+        long measured = measuredBroadcasts.sum();
+        return measured == 0 ? 0 : allocatedBytes.sum() / measured;
+    }
+
+    /**
+     * Average heap bytes allocated per delivered recipient (0 if never measured)
+     */
+    public static long getAllocatedBytesPerRecipient() {
+        long total = recipients.sum();
+        return (measuredBroadcasts.sum() == 0 || total == 0) ? 0 : allocatedBytes.sum() / total;
+    }
+}
@@ -0,0 +1,44 @@
+package com.mts;
+
+/**
+ * LO4: Inheritance & Polymorphism - Interface for the transports that carry chat between nodes
+ *
+ * A bus only moves messages: ChatCluster numbers them, drops duplicates
+ * and hands them to the local rooms. Implementations deliver each
+ * origin's messages in the order they were published.
+ */
+public interface ChatBus {
+
+    /**
+     * Called for every message that arrives from another node
+     */
+    interface Receiver {
+        void receive(ClusterMessage message);
+    }
+
+    void start(Receiver receiver);
+
+    /**
+     * Send to every other node without blocking the caller
+     */
+    void publish(ClusterMessage message);
+
+    void stop();
+
+    String getName();
+
+    /**
+     * Nodes this one can currently send to
+     */
+    int getConnectedPeers();
+
+    /**
+     * Message copies handed to the network (one per peer)
+     */
+    long getSent();
+
+    /**
+     * Message copies dropped because a peer's queue was full
+     */
+    long getDropped();
+}
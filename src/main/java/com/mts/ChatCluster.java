@@ -0,0 +1,243 @@
+package com.mts;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Chat across several MetaStream backends behind one load balancer.
+ * A node fans a chat message out to its own viewers as before and
+ * publishes it once on the bus; every other node fans it out to the
+ * viewers it has in that room (and into that stream's chat history, if
+ * the stream is registered there).
+ *
+ * Messages are numbered per origin. Buses keep each origin's messages in
+ * order, and a message at or below the last id seen from its origin is a
+ * duplicate, so each room sees every node's messages once, in the order
+ * that node published them. Numbering restarts with every run of a node;
+ * a message from a newer run (see ClusterMessage) starts the count for
+ * that origin over, so a restarted node with a pinned
+ * metastream.cluster.nodeId is not taken for a duplicate.
+ *
+ * Chat history sequence ids stay per node (see ChatHistory): a viewer who
+ * reconnects through the load balancer to another backend is replayed
+ * that node's recent chat rather than resumed from its lastSeq.
+ *
+ * metastream.cluster.bus picks the transport: NONE (single node, the
+ * default), LOOPBACK (nodes in one JVM) or TCP (metastream.cluster.port
+ * plus metastream.cluster.peers=host:port,...).
+ *
+ * LO3: Aggregation - a cluster has a bus and per-origin delivery state
+ */
+public class ChatCluster {
+
+    /**
+     * How chat reaches the other nodes
+     */
+    public enum Transport {
+        NONE,
+        LOOPBACK,
+        TCP
+    }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChatCluster.class);
+
+    static final Transport TRANSPORT = Config.getEnum("metastream.cluster.bus", Transport.class, Transport.NONE);
+    static final String NODE_ID = Config.getString("metastream.cluster.nodeId", UUID.randomUUID().toString().substring(0, 8));
+    static final int PORT = Math.max(0, Config.getInt("metastream.cluster.port", 7600));
+    static final String PEERS = Config.getString("metastream.cluster.peers", "");
+    static final String GROUP = Config.getString("metastream.cluster.group", "metastream");
+
+    /**
+     * What has been delivered from one origin node
+     */
+    private static final class Origin {
+        long incarnation; // run of the node the ids below belong to
+        long lastId;
+    }
+
+    private final String nodeId;
+    private final long incarnation = System.currentTimeMillis(); // this run, tells restarts apart
+    private final ChatBus bus; // null on a single node
+    private final Consumer<ClusterMessage> localDelivery;
+    private final Map<String, Origin> origins = new ConcurrentHashMap<>();
+    private final Object publishLock = new Object();
+    private long lastPublishedId; // guarded by publishLock
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder missed = new LongAdder();
+    private final LongAdder deliveryErrors = new LongAdder();
+
+    /**
+     * @param bus transport to the other nodes, or null for a single node
+     * @param localDelivery fans a remote message out on this node
+     */
+    public ChatCluster(String nodeId, ChatBus bus, Consumer<ClusterMessage> localDelivery) {
+        this.nodeId = nodeId;
+        this.bus = bus;
+        this.localDelivery = localDelivery;
+    }
+
+    /**
+     * The cluster described by the metastream.cluster.* settings
+     */
+    static ChatCluster fromConfig(Consumer<ClusterMessage> localDelivery) {
+        switch (TRANSPORT) {
+            case LOOPBACK:
+                return new ChatCluster(NODE_ID, new LoopbackChatBus(GROUP), localDelivery);
+            case TCP:
+                return new ChatCluster(NODE_ID, new TcpMeshChatBus(NODE_ID, PORT, parsePeers(PEERS)), localDelivery);
+            default:
+                return new ChatCluster(NODE_ID, null, localDelivery);
+        }
+    }
+
+    /**
+     * "host:port,host:port" - malformed entries are logged and skipped
+     */
+    static List<InetSocketAddress> parsePeers(String value) {
+        List<InetSocketAddress> peers = new ArrayList<>();
+        for (String entry : value.split(",")) {
+            String peer = entry.trim();
+            if (peer.isEmpty()) {
+                continue;
+            }
+            int colon = peer.lastIndexOf(':');
+            try {
+                if (colon <= 0) {
+                    throw new NumberFormatException("missing port");
+                }
+                int port = Integer.parseInt(peer.substring(colon + 1));
+                peers.add(InetSocketAddress.createUnresolved(peer.substring(0, colon), port));
+            } catch (IllegalArgumentException e) {
+                LOGGER.warn("⚠️ Ignoring cluster peer '{}': {}", peer, e.getMessage());
+            }
+        }
+        return peers;
+    }
+
+    public void start() {
+        if (bus == null) {
+            return;
+        }
+        bus.start(this::receive);
+        LOGGER.info("🔗 Chat cluster node {} on {}", nodeId, bus.getName());
+    }
+
+    public void stop() {
+        if (bus != null) {
+            bus.stop();
+        }
+    }
+
+    /**
+     * Send a chat message that is being fanned out here to the other nodes.
+     * Called under the room's lock, so the ids follow the local order; the bus
+     * only queues the message, nothing here waits on the network.
+     * @param text already escaped
+     */
+    public void publish(String room, String author, String text, long epochMillis) {
+        if (bus == null) {
+            return;
+        }
+        // Ids must reach the bus in order, or receivers would take the later one and drop the earlier
+        synchronized (publishLock) {
+            bus.publish(new ClusterMessage(nodeId, incarnation, ++lastPublishedId, room, author, text, epochMillis));
+        }
+        published.increment();
+    }
+
+    /**
+     * A message from another node: drop repeats, then fan it out here
+     */
+    void receive(ClusterMessage message) {
+        if (nodeId.equals(message.getOrigin())) {
+            return; // our own, already delivered locally
+        }
+        Origin origin = origins.computeIfAbsent(message.getOrigin(), key -> new Origin());
+        // Delivered under the origin's lock so overlapping connections from one node can't reorder it
+        synchronized (origin) {
+            if (message.getIncarnation() != origin.incarnation) {
+                if (message.getIncarnation() < origin.incarnation) {
+                    duplicates.increment(); // straggler from before that node restarted
+                    return;
+                }
+                if (origin.incarnation != 0) {
+                    LOGGER.info("🔄 Cluster node {} restarted, counting its messages from 1 again", message.getOrigin());
+                }
+                origin.incarnation = message.getIncarnation();
+                origin.lastId = 0;
+            }
+            long id = message.getId();
+            if (id <= origin.lastId) {
+                duplicates.increment();
+                return;
+            }
+            if (origin.lastId > 0 && id > origin.lastId + 1) {
+                missed.add(id - origin.lastId - 1);
+            }
+            origin.lastId = id;
+            received.increment();
+            try {
+                localDelivery.accept(message);
+            } catch (RuntimeException e) {
+                deliveryErrors.increment();
+                LOGGER.error("❌ Could not deliver cluster message {}: {}", message, e.getMessage(), e);
+            }
+        }
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public boolean isClustered() {
+        return bus != null;
+    }
+
+    public ChatBus getBus() {
+        return bus;
+    }
+
+    // Metrics getters
+
+    public long getPublished() {
+        return published.sum();
+    }
+
+    public long getReceived() {
+        return received.sum();
+    }
+
+    public long getDuplicates() {
+        return duplicates.sum();
+    }
+
+    /**
+     * Messages from other nodes that never arrived (gaps in their ids)
+     */
+    public long getMissed() {
+        return missed.sum();
+    }
+
+    public long getDeliveryErrors() {
+        return deliveryErrors.sum();
+    }
+
+    /**
+     * Other nodes this one has heard from
+     */
+    public int getKnownOrigins() {
+        return origins.size();
+    }
+}
@@ -0,0 +1,136 @@
+package com.mts;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Fixed-size ring of the most recent chat frames of a stream session.
+ * Every message gets a monotonically increasing sequence id; viewers that
+ * join or reconnect are replayed the tail of the ring, or everything after
+ * the last sequence they saw.
+ *
+ * Sequence ids only mean something to the history that issued them. Each
+ * history counts up from a random epoch held in the high bits (kept under
+ * 2^53 so browsers read them exactly), so a lastSeq from another backend
+ * behind the load balancer, or from an earlier session, is recognised as
+ * foreign and the viewer gets the tail instead of a wrong window.
+ *
+ * Writers claim a sequence with one atomic increment and publish into the
+ * slot seq % capacity; readers never lock and detect overwritten or
+ * not-yet-published slots from the sequence stored with each entry.
+ * Memory is bounded by the capacity no matter how long the stream runs.
+ *
+ * The history's monitor is the lock that orders its room's chat
+ * (see WebSocketHandler): one per stream, so rooms never wait on each
+ * other, whether or not anyone on this node is watching them.
+ *
+ * LO2: Arrays - circular buffer over a fixed array
+ */
+public class ChatHistory {
+
+    static final int DEFAULT_CAPACITY = Config.getInt("metastream.chat.historySize", 256);
+
+    /**
+     * One stored message: the shared, already-encoded frame plus its sequence id
+     */
+    private static final class Entry {
+        final long seq;
+        final OutboundFrame frame;
+
+        Entry(long seq, OutboundFrame frame) {
+            this.seq = seq;
+            this.frame = frame;
+        }
+    }
+
+    private static final int EPOCH_SHIFT = 32;
+    private static final long EPOCHS = 1L << (53 - EPOCH_SHIFT);
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final int mask;
+    private final long base; // random epoch << EPOCH_SHIFT; the first message is base + 1
+    private final AtomicLong nextSeq;
+
+    public ChatHistory() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ChatHistory(int requestedCapacity) {
+        // Round up to a power of two so the slot index is a cheap mask
+        int capacity = requestedCapacity <= 2 ? 2 : Integer.highestOneBit(requestedCapacity - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+        this.base = ThreadLocalRandom.current().nextLong(1, EPOCHS) << EPOCH_SHIFT;
+        this.nextSeq = new AtomicLong(base + 1);
+    }
+
+    /**
+     * Whether seq was issued by this history (and so can be resumed from)
+     */
+    public boolean isOwnSequence(long seq) {
+        return seq > base && seq < nextSeq.get();
+    }
+
+    /**
+     * Claim the sequence id for the next message (encode it into the frame, then publish)
+     */
+    public long nextSequence() {
+        return nextSeq.getAndIncrement();
+    }
+
+    /**
+     * Store an encoded message under a sequence obtained from {@link #nextSequence()}
+     */
+    public void publish(long seq, OutboundFrame frame) {
+        slots.set((int) (seq & mask), new Entry(seq, frame));
+    }
+
+    /**
+     * Replay messages after afterSeq and up to throughSeq, oldest first, at most
+     * maxCount of the newest ones. Stops at a slot whose writer has not
+     * published yet, so replay never reorders.
+     * @param afterSeq last sequence the client has seen, or 0 for "just the tail"
+     * @param throughSeq newest sequence to replay (later ones reach the client live)
+     * @return number of frames handed to the consumer
+     */
+    public int replay(long afterSeq, long throughSeq, int maxCount, Consumer<OutboundFrame> consumer) {
+        if (!isOwnSequence(throughSeq)) {
+            return 0; // nothing yet, or recorded against another history
+        }
+        if (!isOwnSequence(afterSeq)) {
+            afterSeq = base; // another node's or session's sequence - start over
+        }
+        long newest = nextSeq.get() - 1; // newest claimed sequence
+        long last = throughSeq;
+        long oldestRetained = Math.max(base + 1, newest - mask);
+        long from = Math.max(Math.max(afterSeq + 1, oldestRetained), last - maxCount + 1);
+
+        int replayed = 0;
+        for (long seq = from; seq <= last; seq++) {
+            Entry entry = slots.get((int) (seq & mask));
+            if (entry == null || entry.seq < seq) {
+                break; // claimed but not yet published
+            }
+            if (entry.seq > seq) {
+                continue; // already overwritten by a newer message
+            }
+            consumer.accept(entry.frame);
+            replayed++;
+        }
+        return replayed;
+    }
+
+    /**
+     * Sequence id of the newest message, 0 if none yet
+     */
+    public long getLastSequence() {
+        long newest = nextSeq.get() - 1;
+        return newest == base ? 0 : newest;
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+}
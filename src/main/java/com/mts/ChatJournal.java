@@ -0,0 +1,416 @@
+package com.mts;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only chat journal with group commit.
+ * Chat threads only put a small record on a queue; a single writer thread
+ * drains whatever has accumulated, encodes it into one buffer and appends
+ * it through a long-lived FileChannel, so thousands of lines cost one
+ * write (and at most one fsync) instead of an open/close per line.
+ * Every line is kept: when the queue is full the chat thread waits for
+ * room. Setting metastream.journal.offerTimeoutMs to 0 or more trades that
+ * for a bounded wait, after which the line is dropped and counted.
+ *
+ * LO8: File I/O - NIO channel based appends
+ * LO7: Exception Handling - I/O failures are counted and logged, never thrown at callers
+ */
+public class ChatJournal {
+
+    /**
+     * When the journal forces data to disk
+     */
+    public enum FsyncPolicy {
+        BATCH,      // after every group commit - survives power loss, slowest
+        INTERVAL,   // at most every fsyncIntervalMs
+        NONE        // leave it to the OS page cache
+    }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChatJournal.class);
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    static final String JOURNAL_FILE = Config.getString("metastream.journal.file", "chat_log.txt");
+    static final FsyncPolicy FSYNC_POLICY =
+            Config.getEnum("metastream.journal.fsync", FsyncPolicy.class, FsyncPolicy.INTERVAL);
+    static final long FSYNC_INTERVAL_MS = Math.max(1, Config.getLong("metastream.journal.fsyncIntervalMs", 1000));
+    private static final int MAX_BATCH = Math.max(1, Config.getInt("metastream.journal.maxBatch", 4096));
+    private static final int QUEUE_CAPACITY = Math.max(1, Config.getInt("metastream.journal.queueCapacity", 65536));
+    static final long OFFER_TIMEOUT_MS = Math.max(-1, Config.getLong("metastream.journal.offerTimeoutMs", -1)); // -1 = wait
+
+    // /api/metrics: one sample per group commit (encode, write and any fsync)
+    private static final LatencyHistogram writeTime = Metrics.histogram("metastream_file_write_seconds",
+            "Time per log file write (one session entry, or one chat journal group commit)", "file", "chat_journal");
+    private static final LongAdder writeErrorCount = Metrics.counter("metastream_file_write_errors_total",
+            "Log file writes that failed", "file", "chat_journal");
+
+    private static volatile ChatJournal instance;
+
+    /**
+     * One chat line waiting to be written (formatted on the writer thread)
+     */
+    private static final class Entry {
+        final long epochMillis;
+        final String user;
+        final String message;
+
+        Entry(long epochMillis, String user, String message) {
+            this.epochMillis = epochMillis;
+            this.user = user;
+            this.message = message;
+        }
+    }
+
+    private final Path path;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalNanos;
+    private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    // Writer-thread state
+    private FileChannel channel;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private final StringBuilder text = new StringBuilder(8192);
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+    private long lastForceNanos = System.nanoTime();
+    private long cachedSecond = Long.MIN_VALUE;
+    private String cachedTimestamp = "";
+    private boolean unforced = false;
+
+    // Metrics
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder backpressureStalls = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicLong linesWritten = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong maxBatchSize = new AtomicLong();
+    private final AtomicLong fsyncs = new AtomicLong();
+    private final AtomicLong writeErrors = new AtomicLong();
+    private final AtomicLong totalFlushNanos = new AtomicLong();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+    private final AtomicLong lastFlushNanos = new AtomicLong();
+
+    public ChatJournal(Path path, FsyncPolicy fsyncPolicy, long fsyncIntervalMs) {
+        this.path = path;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMs);
+        this.writer = new Thread(this::runWriter, "chat-journal-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Shared journal, started on first use and flushed on JVM shutdown
+     */
+    public static ChatJournal getInstance() {
+        ChatJournal journal = instance;
+        if (journal == null) {
+            synchronized (ChatJournal.class) {
+                journal = instance;
+                if (journal == null) {
+                    journal = new ChatJournal(Paths.get(JOURNAL_FILE), FSYNC_POLICY, FSYNC_INTERVAL_MS);
+                    Runtime.getRuntime().addShutdownHook(new Thread(journal::close, "chat-journal-shutdown"));
+                    instance = journal;
+                }
+            }
+        }
+        return journal;
+    }
+
+    /**
+     * Queue a chat line. Returns immediately unless the queue is full, in
+     * which case the caller waits for room, or at most offerTimeoutMs (when
+     * set) and then drops the line.
+     */
+    public void append(String user, String message) {
+        if (!running) {
+            rejected.increment(); // journal closed or could not be opened
+            return;
+        }
+        Entry entry = new Entry(System.currentTimeMillis(), user, message);
+        if (!queue.offer(entry)) {
+            backpressureStalls.increment();
+            boolean queued;
+            try {
+                if (OFFER_TIMEOUT_MS < 0) {
+                    queue.put(entry);
+                    queued = true;
+                } else {
+                    queued = queue.offer(entry, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                queued = false;
+            }
+            if (!queued) {
+                dropped.increment();
+                LOGGER.debug("Chat journal queue full, dropped a line from {}", user);
+                return;
+            }
+        }
+        // Closed while we were queueing: the writer may already have made its last pass.
+        // Take the line back if it is still there, so it is counted rather than silently lost
+        if (!running && queue.remove(entry)) {
+            rejected.increment();
+            return;
+        }
+        appended.increment();
+    }
+
+    /**
+     * Stop accepting work, write out everything queued and force it to disk
+     */
+    public void close() {
+        running = false; // the writer notices within one poll interval
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runWriter() {
+        List<Entry> batch = new ArrayList<>(Math.min(MAX_BATCH, 1024));
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            LOGGER.error("❌ Cannot open chat journal {}: {}", path, e.getMessage());
+            running = false;
+            List<Entry> lost = new ArrayList<>();
+            queue.drainTo(lost);
+            rejected.add(lost.size());
+            return;
+        }
+
+        try {
+            while (running || !queue.isEmpty()) {
+                Entry first;
+                try {
+                    // Wake up periodically so INTERVAL fsync happens even when chat goes quiet
+                    first = queue.poll(Math.max(1, TimeUnit.NANOSECONDS.toMillis(fsyncIntervalNanos)), TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                    writeBatch(batch);
+                    batch.clear();
+                }
+                maybeForce(first != null);
+            }
+        } finally {
+            forceQuietly();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.warn("⚠️ Error closing chat journal: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Group commit: encode the whole batch and append it with as few writes as possible
+     */
+    private void writeBatch(List<Entry> batch) {
+        long start = System.nanoTime();
+
+        text.setLength(0);
+        for (Entry entry : batch) {
+            text.append('[').append(formatTimestamp(entry.epochMillis)).append("] ")
+                .append(entry.user).append(": ").append(entry.message).append(System.lineSeparator());
+        }
+
+        try {
+            CharBuffer chars = CharBuffer.wrap(text);
+            encoder.reset();
+            buffer.clear();
+            while (true) {
+                CoderResult result = encoder.encode(chars, buffer, true);
+                if (result.isOverflow()) {
+                    flushBuffer(); // buffer full - write what we have and keep encoding
+                    continue;
+                }
+                encoder.flush(buffer);
+                break;
+            }
+            flushBuffer();
+            unforced = true;
+            if (fsyncPolicy == FsyncPolicy.BATCH) {
+                force();
+            }
+        } catch (IOException e) {
+            writeErrors.incrementAndGet();
+            writeErrorCount.increment();
+            LOGGER.error("❌ Chat journal write failed ({} lines lost): {}", batch.size(), e.getMessage());
+            return;
+        }
+
+        long elapsed = System.nanoTime() - start;
+        writeTime.record(elapsed);
+        batches.incrementAndGet();
+        linesWritten.addAndGet(batch.size());
+        maxBatchSize.accumulateAndGet(batch.size(), Math::max);
+        lastFlushNanos.set(elapsed);
+        totalFlushNanos.addAndGet(elapsed);
+        maxFlushNanos.accumulateAndGet(elapsed, Math::max);
+    }
+
+    /**
+     * Lines within the same second share one formatted timestamp
+     */
+    private String formatTimestamp(long epochMillis) {
+        long second = Math.floorDiv(epochMillis, 1000L);
+        if (second != cachedSecond) {
+            LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+            cachedTimestamp = time.format(FORMATTER);
+            cachedSecond = second;
+        }
+        return cachedTimestamp;
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            bytesWritten.addAndGet(channel.write(buffer));
+        }
+        buffer.clear();
+    }
+
+    private void maybeForce(boolean wroteSomething) {
+        if (fsyncPolicy != FsyncPolicy.INTERVAL || !unforced) {
+            return;
+        }
+        if (!wroteSomething || System.nanoTime() - lastForceNanos >= fsyncIntervalNanos) {
+            forceQuietly();
+        }
+    }
+
+    private void force() throws IOException {
+        channel.force(false);
+        fsyncs.incrementAndGet();
+        lastForceNanos = System.nanoTime();
+        unforced = false;
+    }
+
+    private void forceQuietly() {
+        if (!unforced || fsyncPolicy == FsyncPolicy.NONE) {
+            return;
+        }
+        try {
+            force();
+        } catch (IOException e) {
+            writeErrors.incrementAndGet();
+            writeErrorCount.increment();
+            LOGGER.warn("⚠️ Chat journal fsync failed: {}", e.getMessage());
+        }
+    }
+
+    // Metrics getters
+    public Path getPath() {
+        return path;
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public long getAppended() {
+        return appended.sum();
+    }
+
+    public long getBackpressureStalls() {
+        return backpressureStalls.sum();
+    }
+
+    /**
+     * Lines shed because the queue stayed full for offerTimeoutMs (or the
+     * waiting thread was interrupted)
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Lines refused because the journal was closed or failed to open
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getLinesWritten() {
+        return linesWritten.get();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    public long getBatches() {
+        return batches.get();
+    }
+
+    public double getAverageBatchSize() {
+        long count = batches.get();
+        return count == 0 ? 0 : (double) linesWritten.get() / count;
+    }
+
+    public long getMaxBatchSize() {
+        return maxBatchSize.get();
+    }
+
+    public long getFsyncs() {
+        return fsyncs.get();
+    }
+
+    public long getWriteErrors() {
+        return writeErrors.get();
+    }
+
+    /**
+     * Encode + write (+ fsync under BATCH) time of the most recent group commit
+     */
+    public long getLastFlushMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(lastFlushNanos.get());
+    }
+
+    public long getAverageFlushMicros() {
+        long count = batches.get();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalFlushNanos.get() / count);
+    }
+
+    public long getMaxFlushMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxFlushNanos.get());
+    }
+}
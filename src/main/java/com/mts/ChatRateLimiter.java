@@ -0,0 +1,224 @@
+package com.mts;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token-bucket limits on inbound chat, checked before a frame costs
+ * anything: per connection and per remote IP before it is decoded, and
+ * per room before a chat message is journaled, escaped or broadcast.
+ * Identify frames only draw on a small per-connection allowance of their
+ * own, so reconnecting viewers never spend anyone's chat tokens.
+ * A rejected sender gets at most one "system" notice per noticeIntervalMs.
+ *
+ * Each connection carries its own {@link Allowance}, so the per-connection
+ * check touches nothing shared. IP buckets are shared by that host's
+ * connections and looked up once at connect; room buckets are striped.
+ * A rate of 0 turns that limit off.
+ *
+ * LO1: Encapsulation - buckets are only reachable through this class
+ */
+public final class ChatRateLimiter {
+
+    /**
+     * Which limit turned a message away
+     */
+    public enum Scope {
+        CONNECTION,
+        IP,
+        ROOM
+    }
+
+    static final int CONNECTION_RATE = Math.max(0, Config.getInt("metastream.chat.rate.perConnection", 5));
+    static final int CONNECTION_BURST = Math.max(1, Config.getInt("metastream.chat.burst.perConnection", 10));
+    static final int IP_RATE = Math.max(0, Config.getInt("metastream.chat.rate.perIp", 20));
+    static final int IP_BURST = Math.max(1, Config.getInt("metastream.chat.burst.perIp", 40));
+    static final int ROOM_RATE = Math.max(0, Config.getInt("metastream.chat.rate.perRoom", 200));
+    static final int ROOM_BURST = Math.max(1, Config.getInt("metastream.chat.burst.perRoom", 400));
+    static final int ROOM_STRIPES = Math.max(1, Config.getInt("metastream.chat.rate.roomStripes", 4));
+    static final int IDENTIFY_RATE = Math.max(0, Config.getInt("metastream.chat.rate.identify", 1));
+    static final int IDENTIFY_BURST = Math.max(1, Config.getInt("metastream.chat.burst.identify", 5));
+    static final long NOTICE_INTERVAL_MS = Math.max(0, Config.getLong("metastream.chat.rate.noticeIntervalMs", 1000));
+
+    /**
+     * Limiter state owned by one connection
+     */
+    public static final class Allowance {
+        private final TokenBucket connection;  // null when the limit is off
+        private final TokenBucket identify;    // null when the limit is off
+        private final String host;
+        private final TokenBucket ip;          // shared with the host's other connections, null when off
+        private final int stripeHint;
+        private final AtomicLong rejected = new AtomicLong();
+        private long lastNoticeNanos;          // only touched by the connection's own inbound thread
+        private boolean noticeSent;
+
+        private Allowance(TokenBucket connection, TokenBucket identify, String host, TokenBucket ip, int stripeHint) {
+            this.connection = connection;
+            this.identify = identify;
+            this.host = host;
+            this.ip = ip;
+            this.stripeHint = stripeHint;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public long getRejected() {
+            return rejected.get();
+        }
+    }
+
+    /**
+     * An IP's bucket and how many open connections share it
+     */
+    private static final class HostEntry {
+        final TokenBucket bucket = new TokenBucket(IP_RATE, IP_BURST);
+        int connections; // guarded by the map's per-key lock
+    }
+
+    private final Map<String, HostEntry> hosts = new ConcurrentHashMap<>();
+
+    // Metrics
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder rejectedConnection = new LongAdder();
+    private final LongAdder rejectedIp = new LongAdder();
+    private final LongAdder rejectedRoom = new LongAdder();
+    private final LongAdder notices = new LongAdder();
+
+    /**
+     * Bucket for a new room, null when room limits are off
+     */
+    static StripedTokenBucket newRoomBucket() {
+        return ROOM_RATE > 0 ? new StripedTokenBucket(ROOM_RATE, ROOM_BURST, ROOM_STRIPES) : null;
+    }
+
+    /**
+     * Set up the limits for a newly connected client
+     */
+    public Allowance open(SocketAddress remoteAddress, Object owner) {
+        String host = hostOf(remoteAddress);
+        TokenBucket ip = null;
+        if (IP_RATE > 0) {
+            ip = hosts.compute(host, (key, entry) -> {
+                HostEntry target = entry != null ? entry : new HostEntry();
+                target.connections++;
+                return target;
+            }).bucket;
+        }
+        TokenBucket connection = CONNECTION_RATE > 0 ? new TokenBucket(CONNECTION_RATE, CONNECTION_BURST) : null;
+        TokenBucket identify = IDENTIFY_RATE > 0 ? new TokenBucket(IDENTIFY_RATE, IDENTIFY_BURST) : null;
+        return new Allowance(connection, identify, host, ip, System.identityHashCode(owner));
+    }
+
+    /**
+     * Release a closed client's share of its IP bucket
+     */
+    public void close(Allowance allowance) {
+        if (allowance.ip == null) {
+            return;
+        }
+        hosts.computeIfPresent(allowance.host, (key, entry) -> --entry.connections <= 0 ? null : entry);
+    }
+
+    /**
+     * Per-connection and per-IP check, before the frame is decoded
+     * @return the limit that refused it, or null if allowed
+     */
+    public Scope checkSender(Allowance allowance) {
+        if (allowance.connection != null && !allowance.connection.tryAcquire()) {
+            return reject(allowance, rejectedConnection, Scope.CONNECTION);
+        }
+        if (allowance.ip != null && !allowance.ip.tryAcquire()) {
+            return reject(allowance, rejectedIp, Scope.IP);
+        }
+        return null;
+    }
+
+    /**
+     * Per-connection check for an identify frame, before it is decoded
+     * (the chat buckets are left alone)
+     * @return the limit that refused it, or null if allowed
+     */
+    public Scope checkIdentify(Allowance allowance) {
+        if (allowance.identify != null && !allowance.identify.tryAcquire()) {
+            return reject(allowance, rejectedConnection, Scope.CONNECTION);
+        }
+        return null;
+    }
+
+    /**
+     * Room-wide check for a chat message, before any journal or broadcast work
+     * @return the limit that refused it, or null if allowed
+     */
+    public Scope checkRoom(Allowance allowance, ChatRoom room) {
+        StripedTokenBucket bucket = room.getChatLimit();
+        if (bucket != null && !bucket.tryAcquire(allowance.stripeHint)) {
+            return reject(allowance, rejectedRoom, Scope.ROOM);
+        }
+        allowed.increment();
+        return null;
+    }
+
+    /**
+     * True if a rejected sender should be told now, false if it was told recently
+     */
+    public boolean shouldNotify(Allowance allowance) {
+        long now = System.nanoTime();
+        if (allowance.noticeSent && now - allowance.lastNoticeNanos < TimeUnit.MILLISECONDS.toNanos(NOTICE_INTERVAL_MS)) {
+            return false;
+        }
+        allowance.noticeSent = true;
+        allowance.lastNoticeNanos = now;
+        notices.increment();
+        return true;
+    }
+
+    private Scope reject(Allowance allowance, LongAdder counter, Scope scope) {
+        counter.increment();
+        allowance.rejected.incrementAndGet();
+        return scope;
+    }
+
+    private static String hostOf(SocketAddress address) {
+        if (address instanceof InetSocketAddress) {
+            InetSocketAddress inet = (InetSocketAddress) address;
+            return inet.getAddress() != null ? inet.getAddress().getHostAddress() : inet.getHostString();
+        }
+        return String.valueOf(address);
+    }
+
+    // Metrics getters
+    public long getAllowed() {
+        return allowed.sum();
+    }
+
+    public long getRejectedConnection() {
+        return rejectedConnection.sum();
+    }
+
+    public long getRejectedIp() {
+        return rejectedIp.sum();
+    }
+
+    public long getRejectedRoom() {
+        return rejectedRoom.sum();
+    }
+
+    public long getNoticesSent() {
+        return notices.sum();
+    }
+
+    /**
+     * Remote hosts with at least one open connection
+     */
+    public int getTrackedHosts() {
+        return hosts.size();
+    }
+}
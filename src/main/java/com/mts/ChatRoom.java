@@ -0,0 +1,71 @@
+package com.mts;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The viewers of one stream key.
+ * Broadcasts only walk the room's own members, so fan-out cost follows
+ * the audience of that stream rather than every socket on the server.
+ * Chat history lives on the room's StreamSession (looked up per message,
+ * since a room can exist before its stream starts and outlive it).
+ * While its stream is live, the stream's ChatHistory monitor orders the
+ * room's chat (the room itself only when there is no history).
+ *
+ * LO2: Arrays - concurrent set of members
+ */
+public class ChatRoom {
+
+    private final String name;
+    private final Set<ClientConnection> members = ConcurrentHashMap.newKeySet();
+    private final StripedTokenBucket chatLimit = ChatRateLimiter.newRoomBucket(); // null when unlimited
+
+    public ChatRoom(String name) {
+        this.name = name;
+    }
+
+    void add(ClientConnection connection) {
+        members.add(connection);
+    }
+
+    void remove(ClientConnection connection) {
+        members.remove(connection);
+    }
+
+    /**
+     * Queue a frame for every member
+     * @return number of members that accepted it
+     */
+    public int broadcast(OutboundFrame frame) {
+        int accepted = 0;
+        for (ClientConnection connection : members) {
+            if (connection.enqueue(frame)) {
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * Room-wide chat rate limit, null when unlimited
+     */
+    StripedTokenBucket getChatLimit() {
+        return chatLimit;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Set<ClientConnection> getMembers() {
+        return members;
+    }
+
+    public int getMemberCount() {
+        return members.size();
+    }
+
+    public boolean isEmpty() {
+        return members.isEmpty();
+    }
+}
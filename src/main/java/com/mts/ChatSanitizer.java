@@ -0,0 +1,125 @@
+package com.mts;
+
+/**
+ * Chat text clean-up between decoding and broadcast.
+ * InboundMessageCodec trims leading whitespace while it copies the text
+ * out of the frame; {@link #truncate} then trims the end and cuts to
+ * MAX_CODE_POINTS in place, never splitting a surrogate pair; and
+ * {@link #escapeHtml} escapes in one pass into a per-thread buffer,
+ * returning its input untouched when nothing needs escaping.
+ *
+ * Escaping matches the old chain of String.replace calls exactly:
+ * &amp; &lt; &gt; &quot; &#x27; &#x2F;
+ *
+ * LO2: Arrays - characters copied straight between reusable buffers
+ */
+public final class ChatSanitizer {
+
+    static final int MAX_CODE_POINTS = 500;
+
+    // Escaped text can be up to 6x longer; don't keep a buffer that outgrew a normal message
+    private static final int MAX_RETAINED_CAPACITY = 8 * 1024;
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    private ChatSanitizer() {
+    }
+
+    /**
+     * Finish trimming and cut to MAX_CODE_POINTS, in place.
+     * Equivalent to String.trim() then keeping the first MAX_CODE_POINTS
+     * code points, for text whose leading whitespace is already gone.
+     * @param more true if the original continued with non-whitespace past
+     *             what was captured (then the end is not the real end and is not trimmed)
+     * @return true if anything but whitespace was cut off
+     */
+    static boolean truncate(StringBuilder text, boolean more) {
+        if (!more) {
+            int length = text.length();
+            while (length > 0 && text.charAt(length - 1) <= ' ') {
+                length--;
+            }
+            text.setLength(length);
+        }
+        int cut = offsetOfCodePoint(text, MAX_CODE_POINTS);
+        if (cut < text.length()) {
+            text.setLength(cut);
+            return true;
+        }
+        return more;
+    }
+
+    /**
+     * Index just past the first count code points (or the length, if shorter)
+     */
+    private static int offsetOfCodePoint(CharSequence text, int count) {
+        int length = text.length();
+        if (length <= count) {
+            return length; // can't hold more than count code points
+        }
+        int index = 0;
+        for (int i = 0; i < count && index < length; i++) {
+            if (Character.isHighSurrogate(text.charAt(index)) && index + 1 < length
+                    && Character.isLowSurrogate(text.charAt(index + 1))) {
+                index += 2;
+            } else {
+                index++;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Escape HTML to prevent XSS attacks
+     * @return text itself when it has nothing to escape, "" for null
+     */
+    public static String escapeHtml(String text) {
+        if (text == null) {
+            return "";
+        }
+        int length = text.length();
+        int first = 0;
+        while (first < length && replacement(text.charAt(first)) == null) {
+            first++;
+        }
+        if (first == length) {
+            return text; // fast path: no copy
+        }
+
+        StringBuilder out = BUFFER.get();
+        out.setLength(0);
+        out.append(text, 0, first);
+        for (int i = first; i < length; i++) {
+            char c = text.charAt(i);
+            String entity = replacement(c);
+            if (entity != null) {
+                out.append(entity);
+            } else {
+                out.append(c);
+            }
+        }
+        String escaped = out.toString();
+        if (out.capacity() > MAX_RETAINED_CAPACITY) {
+            BUFFER.remove();
+        }
+        return escaped;
+    }
+
+    private static String replacement(char c) {
+        switch (c) {
+            case '&':
+                return "&amp;";
+            case '<':
+                return "&lt;";
+            case '>':
+                return "&gt;";
+            case '"':
+                return "&quot;";
+            case '\'':
+                return "&#x27;";
+            case '/':
+                return "&#x2F;";
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package com.mts;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+/**
+ * Wire encodings of chat traffic. JSON text frames are the default;
+ * clients that open /ws with "Sec-WebSocket-Protocol: metastream.binary.v1"
+ * get binary frames instead. Every broadcast is encoded once in each form
+ * and the two frames are shared by all recipients of that form.
+ *
+ * A binary frame holds one or more messages back to back. Each message is
+ * a one-byte type tag followed by unsigned LEB128 varints and strings
+ * (varint byte length, then UTF-8):
+ *
+ *   server to client
+ *   0x01 AUTHOR   id, name          sent before the first message using the id
+ *   0x02 CHAT     seq (0 = none), epochMillis, authorId, text
+ *   0x03 SYSTEM   epochMillis, text, limit ("" unless a rate-limit notice)
+ *   0x04 JSON     json              any other server message, verbatim
+ *   client to server
+ *   0x10 IDENTIFY username, room ("" = keep), lastSeq + 1 (0 = none), batch (0 unset, 1 off, 2 on)
+ *   0x11 CHAT     text, author ("" = the identified username)
+ *
+ * Author ids are server-wide and never reused, so a connection only needs
+ * each author's name once. Which ids a connection has been sent is tracked
+ * on its send path, which is what keeps the shared frames shareable.
+ *
+ * LO2: Arrays - bytes written straight into buffers, no intermediate objects
+ */
+public final class ChatWireCodec {
+
+    public static final String BINARY_PROTOCOL = "metastream.binary.v1";
+
+    static final byte AUTHOR = 0x01;
+    static final byte CHAT = 0x02;
+    static final byte SYSTEM = 0x03;
+    static final byte JSON = 0x04;
+    static final byte IN_IDENTIFY = 0x10;
+    static final byte IN_CHAT = 0x11;
+
+    // Names interned before the table is started over (ids keep counting up)
+    static final int AUTHOR_TABLE_SIZE = Math.max(16, Config.getInt("metastream.ws.binary.authorTableSize", 4096));
+
+    private static final Gson gson = new Gson();
+    private static final Map<String, Author> authors = new ConcurrentHashMap<>();
+    private static final AtomicInteger nextAuthorId = new AtomicInteger(1);
+
+    private ChatWireCodec() {
+    }
+
+    /**
+     * An interned author name and its AUTHOR message
+     */
+    static final class Author {
+        final int id;
+        final byte[] definition;
+
+        Author(int id, String name) {
+            this.id = id;
+            byte[] utf8 = name.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer out = ByteBuffer.allocate(1 + 5 + 5 + utf8.length);
+            out.put(AUTHOR);
+            putVarint(out, id);
+            putVarint(out, utf8.length);
+            out.put(utf8);
+            this.definition = Arrays.copyOf(out.array(), out.position());
+        }
+    }
+
+    /**
+     * Author ids one connection has been sent. Only touched by the
+     * connection's send path, which runs one frame at a time.
+     */
+    static final class KnownAuthors {
+        private final BitSet ids = new BitSet();
+        private int base;
+
+        /**
+         * @return true if the AUTHOR definition must go first: the id is new to
+         * this connection (and is now remembered), or older than anything it
+         * still remembers
+         */
+        boolean learn(int id) {
+            if (id < base) {
+                return true; // forgotten when the set moved on (e.g. a replayed frame): send it again
+            }
+            if (id >= base + AUTHOR_TABLE_SIZE * 2) {
+                ids.clear(); // keep the set bounded: forget ids from older tables
+                base = id - id % AUTHOR_TABLE_SIZE;
+            }
+            int bit = id - base;
+            if (ids.get(bit)) {
+                return false;
+            }
+            ids.set(bit);
+            return true;
+        }
+    }
+
+    /**
+     * The subprotocol to accept from a client's Sec-WebSocket-Protocol offer, or null for JSON
+     */
+    public static String negotiate(List<String> offered) {
+        if (offered != null) {
+            for (String protocol : offered) {
+                if (BINARY_PROTOCOL.equals(protocol.trim())) {
+                    return BINARY_PROTOCOL;
+                }
+            }
+        }
+        return null;
+    }
+
+    static Author intern(String name) {
+        Author author = authors.get(name);
+        if (author != null) {
+            return author;
+        }
+        if (authors.size() >= AUTHOR_TABLE_SIZE) {
+            authors.clear(); // old ids stay valid on clients that have them
+        }
+        return authors.computeIfAbsent(name, key -> new Author(nextAuthorId.getAndIncrement(), key));
+    }
+
+    // ================================================================
+    // Outbound
+    // ================================================================
+
+    /**
+     * A chat broadcast in both encodings
+     * @param seq history sequence id, or 0 when the stream keeps no history
+     * @param text already escaped
+     */
+    public static OutboundFrame chat(long seq, Instant at, String author, String text) {
+        JsonObject json = new JsonObject();
+        json.addProperty("type", "chat");
+        json.addProperty("author", author);
+        json.addProperty("text", text);
+        json.addProperty("timestamp", isoTimestamp(at));
+        if (seq > 0) {
+            json.addProperty("seq", seq);
+        }
+
+        Author interned = intern(author);
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer out = ByteBuffer.allocate(1 + 10 + 10 + 5 + 5 + utf8.length);
+        out.put(CHAT);
+        putVarint(out, seq);
+        putVarint(out, at.toEpochMilli());
+        putVarint(out, interned.id);
+        putString(out, utf8);
+        return OutboundFrame.of(gson.toJson(json), OutboundFrame.binary(trim(out), interned));
+    }
+
+    /**
+     * A server notice in both encodings
+     * @param limit rate-limit scope for "too fast" notices, or null
+     */
+    public static OutboundFrame system(String text, String limit, Instant at) {
+        JsonObject json = new JsonObject();
+        json.addProperty("type", "system");
+        json.addProperty("text", text);
+        if (limit != null) {
+            json.addProperty("limit", limit);
+        }
+        json.addProperty("timestamp", isoTimestamp(at));
+
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        byte[] limitUtf8 = limit != null ? limit.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        ByteBuffer out = ByteBuffer.allocate(1 + 10 + 5 + utf8.length + 5 + limitUtf8.length);
+        out.put(SYSTEM);
+        putVarint(out, at.toEpochMilli());
+        putString(out, utf8);
+        putString(out, limitUtf8);
+        return OutboundFrame.of(gson.toJson(json), OutboundFrame.binary(trim(out), null));
+    }
+
+    /**
+     * Binary form of a JSON-only frame: one JSON message carrying it verbatim
+     */
+    static OutboundFrame wrapJson(OutboundFrame frame) {
+        ByteBuffer json = frame.payloadView();
+        ByteBuffer out = ByteBuffer.allocate(1 + 5 + json.remaining());
+        out.put(JSON);
+        putVarint(out, json.remaining());
+        out.put(json);
+        return OutboundFrame.binary(trim(out), null);
+    }
+
+    /**
+     * Same format as before the binary protocol: local ISO-8601 date-time
+     */
+    static String isoTimestamp(Instant at) {
+        return LocalDateTime.ofInstant(at, ZoneId.systemDefault()).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+    }
+
+    private static ByteBuffer trim(ByteBuffer out) {
+        out.flip();
+        return out;
+    }
+
+    static void putVarint(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static void putString(ByteBuffer out, byte[] utf8) {
+        putVarint(out, utf8.length);
+        out.put(utf8);
+    }
+
+    // ================================================================
+    // Inbound
+    // ================================================================
+
+    /**
+     * Whether a client frame is an IDENTIFY, from its tag alone
+     */
+    static boolean isIdentify(byte[] frame, int offset, int length) {
+        return length > 0 && frame[offset] == IN_IDENTIFY;
+    }
+
+    /**
+     * Decode one client frame into message (same caps and trimming as the JSON codec)
+     * @throws IllegalArgumentException if the frame is malformed
+     */
+    static InboundMessage decode(byte[] frame, int offset, int length, InboundMessage message) {
+        message.reset();
+        Reader in = new Reader(frame, offset, offset + length);
+        byte tag = in.readByte();
+        if (tag == IN_IDENTIFY) {
+            message.type = InboundMessage.TYPE_IDENTIFY;
+            message.username = in.readName(InboundMessageCodec.MAX_NAME_LENGTH);
+            message.usernameTooLong = in.truncated;
+            String room = in.readName(InboundMessageCodec.MAX_ROOM_LENGTH);
+            message.roomTooLong = in.truncated;
+            message.room = room.isEmpty() ? null : room;
+            message.lastSeq = in.readVarint() - 1;
+            long batch = in.readVarint();
+            message.batch = batch == 0 ? null : Boolean.valueOf(batch == 2);
+        } else if (tag == IN_CHAT) {
+            message.type = InboundMessage.TYPE_CHAT;
+            String text = in.readString(InboundMessageCodec.MAX_TEXT_LENGTH * 4);
+            boolean more = in.truncated;
+            int start = 0;
+            while (start < text.length() && text.charAt(start) <= ' ') {
+                start++;
+            }
+            int keep = Math.min(text.length(), start + InboundMessageCodec.MAX_TEXT_LENGTH);
+            more |= hasContent(text, keep);
+            message.text.append(text, start, keep);
+            message.textTruncated = ChatSanitizer.truncate(message.text, more);
+            message.hasText = true;
+            if (in.hasRemaining()) {
+                String author = in.readName(InboundMessageCodec.MAX_NAME_LENGTH);
+                message.authorTooLong = in.truncated;
+                message.author = author.isEmpty() ? null : author;
+            }
+        } else {
+            message.type = InboundMessage.TYPE_UNKNOWN;
+        }
+        return message;
+    }
+
+    private static boolean hasContent(String text, int from) {
+        for (int i = from; i < text.length(); i++) {
+            if (text.charAt(i) > ' ') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Bounds-checked cursor over an inbound frame
+     */
+    private static final class Reader {
+        private final byte[] data;
+        private final int end;
+        private int pos;
+        boolean truncated; // last readString hit its limit
+
+        Reader(byte[] data, int pos, int end) {
+            this.data = data;
+            this.pos = pos;
+            this.end = end;
+        }
+
+        boolean hasRemaining() {
+            return pos < end;
+        }
+
+        byte readByte() {
+            if (pos >= end) {
+                throw new IllegalArgumentException("Unexpected end of frame at " + pos);
+            }
+            return data[pos++];
+        }
+
+        long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 63; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Varint too long at " + pos);
+        }
+
+        /**
+         * A string of at most limit chars; longer ones are skipped past, not decoded
+         */
+        String readString(int limit) {
+            long length = readVarint();
+            if (length > end - pos) {
+                throw new IllegalArgumentException("String runs past the end of the frame at " + pos);
+            }
+            // A char takes at most 3 UTF-8 bytes (4 for a surrogate pair), so 4 * limit bytes is always enough
+            int decode = (int) Math.min(length, 4L * limit);
+            String value = new String(data, pos, decode, StandardCharsets.UTF_8);
+            pos += (int) length;
+            truncated = decode < length || value.length() > limit;
+            return value.length() > limit ? value.substring(0, limit) : value;
+        }
+
+        /**
+         * A trimmed author/username/room; truncated is set if it is longer than limit
+         */
+        String readName(int limit) {
+            String value = readString(4 * limit).trim();
+            truncated |= value.length() > limit;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,484 @@
+package com.mts;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Outbound side of a single WebSocket viewer.
+ * Broadcasts are placed on a bounded per-connection queue and drained
+ * asynchronously with at most one frame in flight, so a stalled client
+ * only ever delays itself.
+ * Clients that opt in to batching receive messages arriving within a short
+ * window as one {"type":"batch","items":[...]} frame.
+ * Clients that negotiated the binary subprotocol are sent each frame's
+ * binary twin instead; that choice is made as frames leave the queue, so
+ * an author's name is sent exactly when the client first needs it.
+ *
+ * LO1: Encapsulation - queue and counters are only reachable through this class
+ */
+public class ClientConnection {
+
+    /**
+     * What to do when a viewer falls so far behind that its queue is full
+     */
+    public enum OverflowPolicy {
+        DROP_OLDEST,
+        DISCONNECT
+    }
+
+    static final int QUEUE_CAPACITY = Math.max(1, Config.getInt("metastream.ws.queueCapacity", 256));
+    static final OverflowPolicy OVERFLOW_POLICY =
+            Config.getEnum("metastream.ws.overflowPolicy", OverflowPolicy.class, OverflowPolicy.DROP_OLDEST);
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClientConnection.class);
+
+    // Micro-batching: 0 disables the mode entirely (clients always get single frames)
+    static final long BATCH_WINDOW_MS = Math.max(0, Config.getLong("metastream.ws.batchWindowMs", 0));
+    static final int BATCH_MAX_ITEMS = Math.max(1, Config.getInt("metastream.ws.batchMaxItems", 50));
+    private static final long BATCH_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(BATCH_WINDOW_MS);
+
+    private static final ScheduledExecutorService batchTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ws-batch-flush");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Totals that survive individual connections closing
+    private static final LongAdder totalDropped = new LongAdder();
+    private static final LongAdder totalEvicted = new LongAdder();
+    private static final LongAdder totalFrames = new LongAdder();
+    private static final LongAdder totalMessages = new LongAdder();
+    private static final LongAdder totalBatches = new LongAdder();
+    private static final LongAdder totalTextBytes = new LongAdder();
+    private static final LongAdder totalBinaryBytes = new LongAdder();
+    private static final LatencyHistogram sendLatency = Metrics.histogram("metastream_ws_send_latency_seconds",
+            "Time from encoding a message to its frame being written to one viewer");
+
+    private final Session session;
+    private final String remoteAddress;
+    private final BlockingQueue<OutboundFrame> outbound;
+    private final OverflowPolicy overflowPolicy;
+    private final AtomicBoolean sending = new AtomicBoolean(false);
+    private final AtomicBoolean evicted = new AtomicBoolean(false);
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private volatile boolean batching = false;
+    private final boolean binaryProtocol;
+    private final ChatWireCodec.KnownAuthors knownAuthors; // binary clients only, touched by pump() alone
+    private final WebSocketCompression.PerMessageDeflate deflate; // null unless permessage-deflate was negotiated
+
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong messagesSent = new AtomicLong();
+    private final AtomicLong batchesSent = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicInteger peakQueueDepth = new AtomicInteger();
+
+    private volatile String username = "Anonymous";
+    private volatile ChatRoom room; // the stream this viewer is watching
+    private volatile long replayThrough; // newest history seq from before joining the room, 0 once replayed
+    private volatile ChatRateLimiter.Allowance allowance; // inbound chat limits
+
+    // Inbound side: frames for one connection arrive one at a time
+    private final InboundMessageCodec codec = new InboundMessageCodec();
+
+    public ClientConnection(Session session) {
+        this(session, QUEUE_CAPACITY, OVERFLOW_POLICY);
+    }
+
+    public ClientConnection(Session session, int queueCapacity, OverflowPolicy overflowPolicy) {
+        this.session = session;
+        this.remoteAddress = String.valueOf(session.getRemoteAddress());
+        this.outbound = new ArrayBlockingQueue<>(queueCapacity);
+        this.overflowPolicy = overflowPolicy;
+        this.binaryProtocol = session.getUpgradeRequest() != null
+                && ChatWireCodec.negotiate(session.getUpgradeRequest().getSubProtocols()) != null;
+        this.knownAuthors = binaryProtocol ? new ChatWireCodec.KnownAuthors() : null;
+        this.deflate = WebSocketCompression.of(session);
+    }
+
+    /**
+     * Queue a text frame for this viewer without blocking the caller.
+     * @return false if the frame was refused (connection closed or evicted)
+     */
+    public boolean enqueue(String message) {
+        return enqueue(OutboundFrame.of(message));
+    }
+
+    /**
+     * Queue a pre-encoded frame (shared by every recipient of a broadcast)
+     * @return false if the frame was refused (connection closed or evicted)
+     */
+    public boolean enqueue(OutboundFrame message) {
+        if (evicted.get() || !session.isOpen()) {
+            return false;
+        }
+
+        if (!outbound.offer(message)) {
+            if (overflowPolicy == OverflowPolicy.DISCONNECT) {
+                evict();
+                return false;
+            }
+            // DROP_OLDEST: make room by discarding the stalest frames
+            while (!outbound.offer(message)) {
+                if (outbound.poll() != null) {
+                    droppedCount.incrementAndGet();
+                    totalDropped.increment();
+                }
+            }
+        }
+
+        peakQueueDepth.accumulateAndGet(outbound.size(), Math::max);
+        pump();
+        return true;
+    }
+
+    /**
+     * Drain the queue one frame at a time.
+     * Completions that happen inline loop here instead of recursing through the callback.
+     */
+    private void pump() {
+        while (sending.compareAndSet(false, true)) {
+            if (batching && holdForBatch()) {
+                sending.set(false);
+                scheduleFlush();
+                return;
+            }
+
+            OutboundFrame next = batching ? pollBatch() : forWire(outbound.poll());
+            if (next == null) {
+                sending.set(false);
+                if (outbound.isEmpty()) {
+                    return;
+                }
+                continue; // something arrived between poll() and releasing the flag
+            }
+
+            SendCallback callback = new SendCallback(next.getMessageCount(), next.getPayloadLength(), next.isBinary(),
+                                                     next.getCreatedNanos());
+            try {
+                next.sendTo(session.getRemote(), callback);
+            } catch (RuntimeException e) {
+                callback.writeFailed(e);
+            }
+
+            if (callback.detach()) {
+                return; // write still pending - the callback resumes pumping
+            }
+        }
+    }
+
+    /**
+     * Keep collecting while the oldest queued message is younger than the
+     * window and the batch is not yet full
+     */
+    private boolean holdForBatch() {
+        OutboundFrame oldest = outbound.peek();
+        return oldest != null
+                && outbound.size() < BATCH_MAX_ITEMS
+                && System.nanoTime() - oldest.getCreatedNanos() < BATCH_WINDOW_NANOS;
+    }
+
+    /**
+     * Take up to BATCH_MAX_ITEMS queued messages as a single frame
+     */
+    private OutboundFrame pollBatch() {
+        OutboundFrame first = forWire(outbound.poll());
+        if (first == null || outbound.isEmpty()) {
+            return first;
+        }
+
+        List<OutboundFrame> items = new ArrayList<>(Math.min(BATCH_MAX_ITEMS, outbound.size() + 1));
+        items.add(first);
+        OutboundFrame item;
+        while (items.size() < BATCH_MAX_ITEMS && (item = outbound.poll()) != null) {
+            items.add(forWire(item));
+        }
+        return OutboundFrame.batch(items);
+    }
+
+    /**
+     * The encoding this client asked for (called only from pump, in send order)
+     */
+    private OutboundFrame forWire(OutboundFrame frame) {
+        return frame != null && binaryProtocol ? frame.forBinaryClient(knownAuthors) : frame;
+    }
+
+    /**
+     * Make sure a held batch is flushed once its window closes
+     */
+    private void scheduleFlush() {
+        OutboundFrame oldest = outbound.peek();
+        if (oldest == null || !flushScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        long delay = Math.max(0, BATCH_WINDOW_NANOS - (System.nanoTime() - oldest.getCreatedNanos()));
+        batchTimer.schedule(() -> {
+            flushScheduled.set(false);
+            pump();
+        }, delay, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Disconnect a viewer that cannot keep up
+     */
+    private void evict() {
+        if (!evicted.compareAndSet(false, true)) {
+            return;
+        }
+        int discarded = outbound.size();
+        outbound.clear();
+        droppedCount.addAndGet(discarded);
+        totalDropped.add(discarded);
+        totalEvicted.increment();
+
+        LOGGER.warn("⚠️ Evicting slow consumer {} ({})", username, remoteAddress);
+        try {
+            session.close(StatusCode.POLICY_VIOLATION, "Slow consumer");
+        } catch (Exception e) {
+            // LO7: Exception Handling - the socket may already be gone
+            LOGGER.warn("⚠️ Error closing slow consumer: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Tracks one in-flight write.
+     * state: 0 = pending, 1 = pump returned before completion, 2 = completed inline
+     */
+    private final class SendCallback implements WriteCallback {
+        private final AtomicInteger state = new AtomicInteger();
+        private final int messages;
+        private final int bytes;
+        private final boolean binary;
+        private final long createdNanos;
+
+        SendCallback(int messages, int bytes, boolean binary, long createdNanos) {
+            this.messages = messages;
+            this.bytes = bytes;
+            this.binary = binary;
+            this.createdNanos = createdNanos;
+        }
+
+        boolean detach() {
+            return state.compareAndSet(0, 1);
+        }
+
+        @Override
+        public void writeSuccess() {
+            sentCount.incrementAndGet();
+            messagesSent.addAndGet(messages);
+            totalFrames.increment();
+            totalMessages.add(messages);
+            bytesSent.addAndGet(bytes);
+            (binary ? totalBinaryBytes : totalTextBytes).add(bytes);
+            if (messages > 1) {
+                batchesSent.incrementAndGet();
+                totalBatches.increment();
+            }
+            sendLatency.recordSince(createdNanos);
+            complete();
+        }
+
+        @Override
+        public void writeFailed(Throwable error) {
+            failedCount.incrementAndGet();
+            if (!session.isOpen()) {
+                outbound.clear();
+            }
+            complete();
+        }
+
+        private void complete() {
+            sending.set(false);
+            if (!state.compareAndSet(0, 2)) {
+                pump();
+            }
+        }
+    }
+
+    /**
+     * Whether an inbound frame is an identify, before decoding it
+     */
+    boolean isIdentify(String frame) {
+        return codec.isIdentify(frame);
+    }
+
+    /**
+     * Decode an inbound frame into this connection's reusable holder
+     */
+    public InboundMessage decode(String frame) {
+        return codec.decode(frame);
+    }
+
+    /**
+     * Decode an inbound binary-protocol frame into the same holder
+     * @throws IllegalArgumentException if the frame is malformed
+     */
+    public InboundMessage decode(byte[] frame, int offset, int length) {
+        return codec.decode(frame, offset, length);
+    }
+
+    // Getters
+    public Session getSession() {
+        return session;
+    }
+
+    public String getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public ChatRoom getRoom() {
+        return room;
+    }
+
+    ChatRateLimiter.Allowance getAllowance() {
+        return allowance;
+    }
+
+    void setAllowance(ChatRateLimiter.Allowance allowance) {
+        this.allowance = allowance;
+    }
+
+    void setRoom(ChatRoom room) {
+        this.room = room;
+    }
+
+    /**
+     * The history head when this viewer joined its room: chat after it
+     * arrives live, chat up to it is replayed on identify
+     */
+    void setReplayThrough(long seq) {
+        this.replayThrough = seq;
+    }
+
+    /**
+     * The history still to be replayed (see setReplayThrough), at most once:
+     * a second identify in the same room gets nothing it has already been sent
+     */
+    long takeReplayThrough() {
+        long seq = replayThrough;
+        replayThrough = 0;
+        return seq;
+    }
+
+    /**
+     * Opt this client in to batch frames (ignored unless batching is configured)
+     */
+    public void setBatching(boolean enabled) {
+        this.batching = enabled && BATCH_WINDOW_MS > 0;
+    }
+
+    public boolean isBatching() {
+        return batching;
+    }
+
+    /**
+     * True if this client negotiated the binary subprotocol
+     */
+    public boolean isBinaryProtocol() {
+        return binaryProtocol;
+    }
+
+    /**
+     * permessage-deflate state, or null if this client sends and receives uncompressed
+     */
+    public WebSocketCompression.PerMessageDeflate getCompression() {
+        return deflate;
+    }
+
+    public int getQueueDepth() {
+        return outbound.size();
+    }
+
+    public int getPeakQueueDepth() {
+        return peakQueueDepth.get();
+    }
+
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    public long getMessagesSent() {
+        return messagesSent.get();
+    }
+
+    public long getBatchesSent() {
+        return batchesSent.get();
+    }
+
+    /**
+     * Payload bytes written (WebSocket framing not included)
+     */
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public boolean isEvicted() {
+        return evicted.get();
+    }
+
+    public static long getTotalDropped() {
+        return totalDropped.sum();
+    }
+
+    public static long getTotalEvicted() {
+        return totalEvicted.sum();
+    }
+
+    /**
+     * WebSocket frames written (each is one write on an idle connection)
+     */
+    public static long getTotalFrames() {
+        return totalFrames.sum();
+    }
+
+    /**
+     * Chat/system messages delivered, counting every item inside batches
+     */
+    public static long getTotalMessages() {
+        return totalMessages.sum();
+    }
+
+    public static long getTotalBatches() {
+        return totalBatches.sum();
+    }
+
+    public static long getTotalTextBytes() {
+        return totalTextBytes.sum();
+    }
+
+    public static long getTotalBinaryBytes() {
+        return totalBinaryBytes.sum();
+    }
+}
@@ -0,0 +1,94 @@
+package com.mts;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * One chat message travelling between nodes.
+ * (origin, incarnation, id) identifies it: ids count up from 1 per run of
+ * the origin node, and the incarnation (when that run started) tells runs
+ * apart even when an operator pins the node id, so a receiver can drop
+ * anything at or below the last id it saw from the origin's current run.
+ * The text is already escaped by the origin.
+ *
+ * LO1: Encapsulation - immutable, with its own wire format
+ */
+public final class ClusterMessage {
+
+    private final String origin;
+    private final long incarnation;
+    private final long id;
+    private final String room;
+    private final String author;
+    private final String text;
+    private final long epochMillis;
+
+    public ClusterMessage(String origin, long incarnation, long id, String room, String author, String text,
+                          long epochMillis) {
+        this.origin = origin;
+        this.incarnation = incarnation;
+        this.id = id;
+        this.room = room;
+        this.author = author;
+        this.text = text;
+        this.epochMillis = epochMillis;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeUTF(origin);
+        out.writeLong(incarnation);
+        out.writeLong(id);
+        out.writeUTF(room);
+        out.writeUTF(author);
+        out.writeUTF(text);
+        out.writeLong(epochMillis);
+    }
+
+    static ClusterMessage readFrom(DataInputStream in) throws IOException {
+        String origin = in.readUTF();
+        long incarnation = in.readLong();
+        long id = in.readLong();
+        String room = in.readUTF();
+        String author = in.readUTF();
+        String text = in.readUTF();
+        long epochMillis = in.readLong();
+        return new ClusterMessage(origin, incarnation, id, room, author, text, epochMillis);
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    /**
+     * Start time (epoch millis) of the origin run that sent this
+     */
+    public long getIncarnation() {
+        return incarnation;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getRoom() {
+        return room;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public long getEpochMillis() {
+        return epochMillis;
+    }
+
+    @Override
+    public String toString() {
+        return origin + "#" + id + " [" + room + "] " + author + ": " + text;
+    }
+}
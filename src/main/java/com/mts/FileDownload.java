@@ -0,0 +1,225 @@
+package com.mts;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.HttpOutput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import spark.Request;
+import spark.Response;
+
+/**
+ * Streams a file into an HTTP response without loading it onto the heap.
+ * The requested region is memory-mapped and handed to Jetty directly
+ * (or transferred channel-to-channel on other containers), and
+ * Range / If-Range / ETag / Last-Modified are honoured so clients can
+ * resume downloads and skip unchanged files.
+ *
+ * LO8: File I/O - mapped reads and channel transfers
+ * LO7: Exception Handling - bad ranges map to 416, I/O errors to the caller
+ */
+public final class FileDownload {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileDownload.class);
+
+    // Map at most this much at a time so huge files never need one giant mapping
+    private static final long MAP_CHUNK = 16L * 1024 * 1024;
+
+    private FileDownload() {
+    }
+
+    /**
+     * Write path (or the requested part of it) to the response.
+     * The caller must have checked that the file exists.
+     * @return an empty body for Spark - everything has already been written
+     */
+    public static String serve(Request req, Response res, Path path) throws IOException {
+        long size = Files.size(path);
+        long lastModified = Files.getLastModifiedTime(path).toMillis();
+        String etag = '"' + Long.toHexString(size) + '-' + Long.toHexString(lastModified) + '"';
+
+        res.header("Accept-Ranges", "bytes");
+        res.header("ETag", etag);
+        res.header("Last-Modified", httpDate(lastModified));
+
+        if (notModified(req, etag, lastModified)) {
+            res.status(304);
+            return "";
+        }
+
+        long start = 0;
+        long end = size - 1;
+        String range = req.headers("Range");
+        if (range != null && rangeApplies(req.headers("If-Range"), etag, lastModified)) {
+            long[] parsed = parseRange(range, size);
+            if (parsed == null) {
+                res.status(416);
+                res.header("Content-Range", "bytes */" + size);
+                return "";
+            }
+            if (parsed.length == 2) {
+                start = parsed[0];
+                end = parsed[1];
+                res.status(206);
+                res.header("Content-Range", "bytes " + start + "-" + end + "/" + size);
+            }
+        }
+
+        long length = end - start + 1;
+        HttpServletResponse raw = res.raw();
+        raw.setContentLengthLong(length);
+        if (length <= 0) {
+            return "";
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            OutputStream out = raw.getOutputStream();
+            if (out instanceof HttpOutput) {
+                sendMapped(channel, (HttpOutput) out, start, length);
+            } else {
+                transfer(channel, Channels.newChannel(out), start, length);
+            }
+        }
+        LOGGER.debug("Served {} bytes {}-{} of {}", path, start, end, size);
+        return "";
+    }
+
+    /**
+     * Jetty writes large buffers straight to the socket, so the mapped pages
+     * go from the page cache to the network without a heap copy.
+     * (write, not sendContent - sendContent completes the response after one buffer)
+     */
+    private static void sendMapped(FileChannel channel, HttpOutput out, long start, long length) throws IOException {
+        long position = start;
+        long remaining = length;
+        while (remaining > 0) {
+            long chunk = Math.min(remaining, MAP_CHUNK);
+            MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, chunk);
+            out.write(region);
+            position += chunk;
+            remaining -= chunk;
+        }
+    }
+
+    private static void transfer(FileChannel channel, WritableByteChannel target, long start, long length) throws IOException {
+        long position = start;
+        long remaining = length;
+        while (remaining > 0) {
+            long sent = channel.transferTo(position, remaining, target);
+            if (sent <= 0 && position >= channel.size()) {
+                throw new IOException("File shrank while being sent");
+            }
+            position += sent;
+            remaining -= sent;
+        }
+    }
+
+    private static boolean notModified(Request req, String etag, long lastModified) {
+        String ifNoneMatch = req.headers("If-None-Match");
+        if (ifNoneMatch != null) {
+            // If-None-Match wins over If-Modified-Since when both are sent
+            for (String candidate : ifNoneMatch.split(",")) {
+                String tag = candidate.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        long since = parseHttpDate(req.headers("If-Modified-Since"));
+        return since >= 0 && lastModified / 1000 <= since / 1000;
+    }
+
+    /**
+     * A Range only applies if If-Range is absent or still matches the file
+     */
+    private static boolean rangeApplies(String ifRange, String etag, long lastModified) {
+        if (ifRange == null) {
+            return true;
+        }
+        String value = ifRange.trim();
+        if (value.startsWith("\"")) {
+            return value.equals(etag);
+        }
+        long date = parseHttpDate(value);
+        return date >= 0 && lastModified / 1000 == date / 1000;
+    }
+
+    /**
+     * Parse a single "bytes=" range against the file size.
+     * @return {start, end} inclusive, an empty array to ignore the header
+     *         (unsupported unit or multiple ranges), or null if unsatisfiable
+     */
+    static long[] parseRange(String header, long size) {
+        String value = header.trim();
+        if (!value.startsWith("bytes=") || value.indexOf(',') >= 0) {
+            return new long[0]; // serve the whole file instead
+        }
+        String spec = value.substring(6).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return new long[0];
+        }
+        try {
+            long start;
+            long end;
+            if (dash == 0) {
+                long suffix = Long.parseLong(spec.substring(1).trim()); // last N bytes
+                if (suffix <= 0 || size == 0) {
+                    return null;
+                }
+                start = Math.max(0, size - suffix);
+                end = size - 1;
+            } else {
+                start = Long.parseLong(spec.substring(0, dash).trim());
+                String last = spec.substring(dash + 1).trim();
+                long requestedEnd = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+                if (requestedEnd < start) {
+                    return new long[0]; // syntactically invalid - ignore it
+                }
+                if (start >= size) {
+                    return null;
+                }
+                end = Math.min(requestedEnd, size - 1);
+            }
+            return new long[] { start, end };
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+
+    private static String httpDate(long epochMillis) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                ZonedDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneOffset.UTC));
+    }
+
+    private static long parseHttpDate(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+}
@@ -4,33 +4,42 @@ import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
 
 /**
  * LO8: Text File I/O - Reads and writes stream logs
  * LO7: Exception Handling - Proper error handling for I/O operations
  */
 public class FileLogger {
-    private static final String LOG_FILE = "stream_log.txt";
+    static final String LOG_FILE = Config.getString("metastream.streamLog.file", "stream_log.txt");
+    static final String TIMESERIES_DIR = Config.getString("metastream.timeseries.dir", "session_timeseries");
     private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final Pattern SESSION_ID = Pattern.compile("[0-9a-fA-F-]{1,64}"); // UUIDs, never a path
+
+    // /api/metrics: time per file write and failed writes
+    private static final LatencyHistogram logWriteTime = Metrics.histogram("metastream_file_write_seconds",
+            "Time per log file write (one session entry, or one chat journal group commit)", "file", "stream_log");
+    private static final LatencyHistogram timeSeriesWriteTime = Metrics.histogram("metastream_file_write_seconds",
+            "Time per log file write (one session entry, or one chat journal group commit)", "file", "session_timeseries");
+    private static final LongAdder logWriteErrors = Metrics.counter("metastream_file_write_errors_total",
+            "Log file writes that failed", "file", "stream_log");
+    private static final LongAdder timeSeriesWriteErrors = Metrics.counter("metastream_file_write_errors_total",
+            "Log file writes that failed", "file", "session_timeseries");
 
     /**
      * Log a chat message
-     * LO8: File I/O - Writing to text file
+     * LO8: File I/O - appended to the chat journal (chat_log.txt) by its writer thread,
+     * so the caller never waits on disk
      */
     public void logChat(String user, String message) {
-        // LO7: Exception Handling
-        try (FileWriter fw = new FileWriter(LOG_FILE, true);
-             BufferedWriter bw = new BufferedWriter(fw);
-             PrintWriter out = new PrintWriter(bw)) {
-            
-            String timestamp = LocalDateTime.now().format(FORMATTER);
-            out.println("[" + timestamp + "] " + user + ": " + message);
-            
-        } catch (IOException e) {
-            System.err.println("❌ FileLogger Error: " + e.getMessage());
-        }
+        ChatJournal.getInstance().append(user, message);
     }
 
     /**
@@ -44,6 +53,7 @@ public class FileLogger {
             return;
         }
 
+        long start = System.nanoTime();
         try (FileWriter fw = new FileWriter(LOG_FILE, true);
              BufferedWriter bw = new BufferedWriter(fw);
              PrintWriter out = new PrintWriter(bw)) {
@@ -74,7 +84,7 @@ public class FileLogger {
             out.println("Chat Messages:");
             out.println("--------------------------------------------------");
             
-            // Note: Individual chat messages are already logged via logChat()
+            // Note: Individual chat messages are journaled via logChat() to chat_log.txt
             // This section header is for organization
             
             out.println();
@@ -83,8 +93,53 @@ public class FileLogger {
             
         } catch (IOException e) {
             // LO7: Exception Handling - Proper error reporting
+            logWriteErrors.increment();
             System.err.println("⚠️ Error writing session log: " + e.getMessage());
             e.printStackTrace();
+        } finally {
+            logWriteTime.recordSince(start);
+        }
+    }
+
+    /**
+     * Write the session's viewer / chat time series next to the session log
+     * LO8: File I/O - one JSON file per session in TIMESERIES_DIR
+     * @return the file written, or null if it could not be written
+     */
+    public Path writeTimeSeries(StreamSession session) {
+        if (session == null) {
+            System.err.println("⚠️ Cannot write time series: session is null");
+            return null;
+        }
+
+        long start = System.nanoTime();
+        try {
+            Path dir = Paths.get(TIMESERIES_DIR);
+            Files.createDirectories(dir);
+            Path file = dir.resolve(session.getSessionId() + ".json");
+            Files.write(file, session.getTimeSeriesJson().toString().getBytes(StandardCharsets.UTF_8));
+            return file;
+        } catch (IOException e) {
+            // LO7: Exception Handling - Proper error reporting
+            timeSeriesWriteErrors.increment();
+            System.err.println("⚠️ Error writing session time series: " + e.getMessage());
+            return null;
+        } finally {
+            timeSeriesWriteTime.recordSince(start);
+        }
+    }
+
+    /**
+     * Time series written for a finished session, or null if there is none
+     */
+    public String readTimeSeries(String sessionId) throws IOException {
+        if (sessionId == null || !SESSION_ID.matcher(sessionId).matches()) {
+            return null;
+        }
+        Path file = Paths.get(TIMESERIES_DIR, sessionId + ".json");
+        if (!Files.isRegularFile(file)) {
+            return null;
         }
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,714 @@
+package com.mts;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory edge cache for the HLS files ffmpeg writes under
+ * media-server/media/live/<key>/, so viewers are served by the backend
+ * and the disk is read about once per file rather than once per viewer.
+ *
+ * A WatchService on the output directories drops a playlist as soon as
+ * it changes and pre-loads the segments it lists. Platforms whose watch
+ * service polls slowly (macOS) are covered by re-checking a cached
+ * playlist's size and mtime at most every playlistRecheckMs. Segments
+ * live in a byte-bounded cache and leave it oldest first, which for a
+ * live window is also least recently wanted.
+ *
+ * Playlists are served with CAN-BLOCK-RELOAD=YES, so a player can ask for
+ * the next media sequence number (?_HLS_msn=N) and be answered the moment
+ * the watcher sees ffmpeg list it, instead of polling blindly and finding
+ * out up to a segment late. At most maxBlockedRequests requests are held
+ * at once; each is held for at most three target durations.
+ *
+ * LO8: File I/O - watched directory, whole-file reads
+ * LO7: Exception Handling - a missing or unreadable file is a miss, never an error page
+ */
+public class HlsCache {
+
+    /**
+     * One cached file: its bytes and the validators they were read with
+     */
+    public static final class Entry {
+        private final String name;
+        private final byte[] data;          // as served (playlists gain a SERVER-CONTROL tag)
+        private final long size;            // on disk
+        private final long modifiedMillis;
+        private final String etag;
+        private final long lastSequence;    // playlists: media sequence number of the last segment, else -1
+        private final long targetDurationMillis;
+        private final boolean ended;
+        private volatile long checkedNanos;
+
+        Entry(String name, byte[] data, long modifiedMillis) {
+            this(name, data, data.length, modifiedMillis, -1, 0, false);
+        }
+
+        private Entry(String name, byte[] data, long size, long modifiedMillis,
+                      long lastSequence, long targetDurationMillis, boolean ended) {
+            this.name = name;
+            this.data = data;
+            this.size = size;
+            this.modifiedMillis = modifiedMillis;
+            this.etag = "\"" + Long.toHexString(size) + "-" + Long.toHexString(modifiedMillis) + "\"";
+            this.lastSequence = lastSequence;
+            this.targetDurationMillis = targetDurationMillis;
+            this.ended = ended;
+            this.checkedNanos = System.nanoTime();
+        }
+
+        /**
+         * Parse a media playlist and advertise blocking reload in the copy we serve
+         */
+        static Entry playlist(String name, byte[] raw, long modifiedMillis) {
+            String text = new String(raw, StandardCharsets.UTF_8);
+            long mediaSequence = 0;
+            long targetSeconds = 0;
+            int segmentCount = 0;
+            boolean ended = false;
+            boolean serverControl = false;
+            int insertAt = -1;
+            for (String line : text.split("\n")) {
+                String tag = line.trim();
+                if (tag.isEmpty()) {
+                    continue;
+                }
+                if (!tag.startsWith("#")) {
+                    segmentCount++;
+                } else if (tag.startsWith("#EXT-X-MEDIA-SEQUENCE:")) {
+                    mediaSequence = parseLong(tag.substring(22), 0);
+                } else if (tag.startsWith("#EXT-X-TARGETDURATION:")) {
+                    targetSeconds = parseLong(tag.substring(22), 0);
+                    insertAt = text.indexOf('\n', text.indexOf(tag)) + 1;
+                } else if (tag.startsWith("#EXT-X-ENDLIST")) {
+                    ended = true;
+                } else if (tag.startsWith("#EXT-X-SERVER-CONTROL")) {
+                    serverControl = true;
+                }
+            }
+            byte[] served = raw;
+            if (insertAt > 0 && !ended && !serverControl) {
+                served = (text.substring(0, insertAt) + SERVER_CONTROL + "\n" + text.substring(insertAt))
+                        .getBytes(StandardCharsets.UTF_8);
+            }
+            return new Entry(name, served, raw.length, modifiedMillis,
+                    mediaSequence + segmentCount - 1, targetSeconds * 1000, ended);
+        }
+
+        /**
+         * Whether this playlist answers a request for media sequence number msn
+         */
+        public boolean canSatisfy(long msn) {
+            return ended || lastSequence >= msn;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public long getLastSequence() {
+            return lastSequence;
+        }
+
+        public long getModifiedMillis() {
+            return modifiedMillis;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+    }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HlsCache.class);
+
+    static final String ROOT = Config.getString("metastream.hls.dir", "media-server/media/live");
+    static final long MAX_BYTES = Math.max(1, Config.getLong("metastream.hls.cacheBytes", 64L * 1024 * 1024));
+    static final long PLAYLIST_RECHECK_MS = Math.max(0, Config.getLong("metastream.hls.playlistRecheckMs", 250));
+
+    static final int MAX_BLOCKED_REQUESTS = Math.max(0, Config.getInt("metastream.hls.maxBlockedRequests", 64));
+    static final long BLOCK_TIMEOUT_MS = Math.max(1, Config.getLong("metastream.hls.blockTimeoutMs", 10000));
+
+    private static final String SERVER_CONTROL = "#EXT-X-SERVER-CONTROL:CAN-BLOCK-RELOAD=YES";
+    private static final Pattern FILE_NAME = Pattern.compile("[A-Za-z0-9_-][A-Za-z0-9_.-]{0,127}\\.(m3u8|ts|m4s|mp4|aac)");
+
+    private final Path root;
+    private final Map<String, Entry> playlists = new ConcurrentHashMap<>();   // "key/index.m3u8" -> entry
+    private final Map<String, Entry> segments = new ConcurrentHashMap<>();    // "key/stream-001.ts" -> entry
+    private final Queue<Entry> segmentOrder = new ConcurrentLinkedQueue<>();  // oldest cached first
+    private final AtomicLong cachedBytes = new AtomicLong();
+    private final Map<WatchKey, String> watchedKeys = new ConcurrentHashMap<>(); // watch key -> stream key ("" = root)
+    private volatile WatchService watcher;
+    private volatile boolean running;
+    private final Object playlistChanged = new Object();     // notified on every playlist reload
+    private final AtomicLong playlistVersion = new AtomicLong();
+    private final AtomicInteger blocked = new AtomicInteger();
+
+    // Metrics
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder diskReads = new LongAdder();
+    private final LongAdder bytesServed = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder playlistReloads = new LongAdder();
+    private final LongAdder prefetched = new LongAdder();
+    private final LongAdder watchEvents = new LongAdder();
+    private final LongAdder blockingRequests = new LongAdder();
+    private final LongAdder blockingImmediate = new LongAdder();
+    private final LongAdder blockingTimeouts = new LongAdder();
+    private final LongAdder blockingBusy = new LongAdder();
+    private final LongAdder heldNanos = new LongAdder();
+    private final DeliveryDelay heldDelay = new DeliveryDelay();
+    private final DeliveryDelay polledDelay = new DeliveryDelay();
+
+    /**
+     * How long after ffmpeg wrote a playlist viewers received it
+     */
+    private static final class DeliveryDelay {
+        final LongAdder count = new LongAdder();
+        final LongAdder totalMillis = new LongAdder();
+        final AtomicLong maxMillis = new AtomicLong();
+
+        void record(Entry playlist) {
+            long delay = Math.max(0, System.currentTimeMillis() - playlist.modifiedMillis);
+            count.increment();
+            totalMillis.add(delay);
+            maxMillis.accumulateAndGet(delay, Math::max);
+        }
+
+        double averageMillis() {
+            long n = count.sum();
+            return n == 0 ? 0 : (double) totalMillis.sum() / n;
+        }
+    }
+
+    public HlsCache() {
+        this(Paths.get(ROOT));
+    }
+
+    public HlsCache(Path root) {
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Start the directory watcher (a daemon thread that waits for the root to appear)
+     */
+    public void start() {
+        running = true;
+        Thread thread = new Thread(this::watchLoop, "hls-watch");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        WatchService current = watcher;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                LOGGER.debug("Closing HLS watcher: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * MIME type for an HLS file name
+     */
+    public static String contentType(String fileName) {
+        if (fileName.endsWith(".m3u8")) {
+            return "application/vnd.apple.mpegurl";
+        }
+        if (fileName.endsWith(".ts")) {
+            return "video/mp2t";
+        }
+        if (fileName.endsWith(".m4s")) {
+            return "video/iso.segment";
+        }
+        return fileName.endsWith(".aac") ? "audio/aac" : "video/mp4";
+    }
+
+    /**
+     * Whether a request path names something this cache may serve
+     */
+    public static boolean isValidName(String streamKey, String fileName) {
+        return SessionRegistry.isValidKey(streamKey) && fileName != null && FILE_NAME.matcher(fileName).matches();
+    }
+
+    /**
+     * The file's bytes from memory, reading it from disk on a miss
+     * @return null if the name is invalid or the file does not exist
+     */
+    public Entry get(String streamKey, String fileName) {
+        if (!isValidName(streamKey, fileName)) {
+            return null;
+        }
+        String id = streamKey + "/" + fileName;
+        Entry entry;
+        if (fileName.endsWith(".m3u8")) {
+            entry = playlist(streamKey, fileName, id);
+            if (entry != null) {
+                polledDelay.record(entry);
+            }
+        } else {
+            entry = segments.get(id);
+            if (entry != null) {
+                hits.increment();
+            } else {
+                misses.increment();
+                entry = loadSegment(streamKey, fileName, id);
+            }
+        }
+        if (entry != null) {
+            bytesServed.add(entry.data.length);
+        }
+        return entry;
+    }
+
+    /**
+     * Blocking playlist reload: hold the request until the playlist lists
+     * media sequence number msn (or ends), for at most three target durations
+     * and never longer than blockTimeoutMs.
+     * @return the newest playlist, which the caller checks with {@link Entry#canSatisfy};
+     *         null if the name is invalid or the playlist does not exist
+     * @throws IllegalArgumentException if msn is more than two segments past the playlist's last
+     * @throws InterruptedException if the server is shutting down
+     */
+    public Entry awaitPlaylist(String streamKey, String fileName, long msn) throws InterruptedException {
+        if (!isValidName(streamKey, fileName) || !fileName.endsWith(".m3u8")) {
+            return null;
+        }
+        String id = streamKey + "/" + fileName;
+        long version = playlistVersion.get();
+        Entry entry = playlist(streamKey, fileName, id);
+        if (entry == null) {
+            return null;
+        }
+        blockingRequests.increment();
+        if (msn > entry.lastSequence + 2 && !entry.ended) {
+            throw new IllegalArgumentException("_HLS_msn " + msn + " is too far ahead of the playlist (last " + entry.lastSequence + ")");
+        }
+        if (entry.canSatisfy(msn)) {
+            blockingImmediate.increment();
+            bytesServed.add(entry.data.length);
+            return entry;
+        }
+        if (blocked.incrementAndGet() > MAX_BLOCKED_REQUESTS) {
+            blocked.decrementAndGet();
+            blockingBusy.increment();
+            return entry;
+        }
+        long start = System.nanoTime();
+        long timeoutMillis = entry.targetDurationMillis > 0
+                ? Math.min(3 * entry.targetDurationMillis, BLOCK_TIMEOUT_MS) : BLOCK_TIMEOUT_MS;
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        // Woken by the watcher's reload; wakes up on its own to re-check where the watcher is slow
+        long pollMillis = Math.max(10, PLAYLIST_RECHECK_MS);
+        try {
+            while (!entry.canSatisfy(msn)) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    blockingTimeouts.increment();
+                    return entry;
+                }
+                synchronized (playlistChanged) {
+                    if (playlistVersion.get() == version) {
+                        playlistChanged.wait(Math.max(1, Math.min(TimeUnit.NANOSECONDS.toMillis(remaining), pollMillis)));
+                    }
+                }
+                version = playlistVersion.get();
+                entry = playlist(streamKey, fileName, id);
+                if (entry == null) {
+                    return null; // stream went away
+                }
+            }
+        } finally {
+            blocked.decrementAndGet();
+        }
+        heldNanos.add(System.nanoTime() - start);
+        heldDelay.record(entry);
+        bytesServed.add(entry.data.length);
+        return entry;
+    }
+
+    private Entry playlist(String streamKey, String fileName, String id) {
+        Entry cached = playlists.get(id);
+        if (cached != null && !needsRecheck(cached)) {
+            hits.increment();
+            return cached;
+        }
+        Path file = root.resolve(streamKey).resolve(fileName);
+        if (cached != null) {
+            // Cheap stat in case the watcher is slow on this platform
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                if (attributes.size() == cached.size && attributes.lastModifiedTime().toMillis() == cached.modifiedMillis) {
+                    cached.checkedNanos = System.nanoTime();
+                    hits.increment();
+                    return cached;
+                }
+            } catch (IOException e) {
+                playlists.remove(id, cached);
+                misses.increment();
+                return null; // gone
+            }
+        }
+        misses.increment();
+        return reloadPlaylist(streamKey, file, id);
+    }
+
+    private Entry reloadPlaylist(String streamKey, Path file, String id) {
+        Entry read = read(file, id);
+        if (read == null) {
+            playlists.remove(id);
+            return null;
+        }
+        // Segments first, so a released blocking request finds the new one already cached
+        prefetch(streamKey, read);
+        Entry fresh = Entry.playlist(id, read.data, read.modifiedMillis);
+        playlists.put(id, fresh);
+        playlistReloads.increment();
+        playlistVersion.incrementAndGet();
+        synchronized (playlistChanged) {
+            playlistChanged.notifyAll();
+        }
+        return fresh;
+    }
+
+    private boolean needsRecheck(Entry entry) {
+        return System.nanoTime() - entry.checkedNanos > TimeUnit.MILLISECONDS.toNanos(PLAYLIST_RECHECK_MS);
+    }
+
+    /**
+     * Load every segment a fresh playlist lists that is missing or stale in the cache
+     */
+    private void prefetch(String streamKey, Entry playlist) {
+        String text = new String(playlist.data, StandardCharsets.UTF_8);
+        for (String line : text.split("\n")) {
+            String name = line.trim();
+            if (name.isEmpty() || name.startsWith("#") || !isValidName(streamKey, name)) {
+                continue; // tags, and URIs we would not serve anyway
+            }
+            String id = streamKey + "/" + name;
+            Entry cached = segments.get(id);
+            if (cached != null && isCurrent(root.resolve(streamKey).resolve(name), cached)) {
+                continue;
+            }
+            if (loadSegment(streamKey, name, id) != null) {
+                prefetched.increment();
+            }
+        }
+    }
+
+    /**
+     * Same size and mtime as on disk (segment names repeat when ffmpeg restarts)
+     */
+    private static boolean isCurrent(Path file, Entry cached) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return attributes.size() == cached.size && attributes.lastModifiedTime().toMillis() == cached.modifiedMillis;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private Entry loadSegment(String streamKey, String fileName, String id) {
+        Entry fresh = read(root.resolve(streamKey).resolve(fileName), id);
+        if (fresh == null) {
+            return null;
+        }
+        Entry previous = segments.put(id, fresh);
+        if (previous != null && segmentOrder.remove(previous)) {
+            cachedBytes.addAndGet(-previous.size);
+        }
+        segmentOrder.add(fresh);
+        cachedBytes.addAndGet(fresh.size);
+        evictOverflow();
+        return fresh;
+    }
+
+    /**
+     * Drop the oldest segments until the cache fits again
+     */
+    private void evictOverflow() {
+        while (cachedBytes.get() > MAX_BYTES) {
+            Entry oldest = segmentOrder.poll();
+            if (oldest == null) {
+                return;
+            }
+            cachedBytes.addAndGet(-oldest.size);
+            segments.remove(oldest.name, oldest);
+            evictions.increment();
+        }
+    }
+
+    private void invalidateSegment(String id) {
+        Entry removed = segments.remove(id);
+        if (removed != null && segmentOrder.remove(removed)) {
+            cachedBytes.addAndGet(-removed.size);
+        }
+    }
+
+    private Entry read(Path file, String id) {
+        Path normalized = file.normalize();
+        if (!normalized.startsWith(root)) {
+            return null;
+        }
+        try {
+            long modified = Files.getLastModifiedTime(normalized).toMillis();
+            byte[] data = Files.readAllBytes(normalized);
+            diskReads.increment();
+            return new Entry(id, data, modified);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            LOGGER.warn("⚠️ Cannot read HLS file {}: {}", normalized, e.getMessage());
+            return null;
+        }
+    }
+
+    // ================================================================
+    // Directory watcher
+    // ================================================================
+
+    private void watchLoop() {
+        while (running) {
+            if (!Files.isDirectory(root)) {
+                sleepQuietly(2000); // media server not started yet
+                continue;
+            }
+            try (WatchService service = FileSystems.getDefault().newWatchService()) {
+                watcher = service;
+                watchedKeys.clear();
+                watchedKeys.put(root.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE), "");
+                try (var children = Files.list(root)) {
+                    for (Path child : (Iterable<Path>) children::iterator) {
+                        watchStream(service, child);
+                    }
+                }
+                LOGGER.info("📺 Serving HLS from {} (cache {} MB)", root, MAX_BYTES >> 20);
+                drainEvents(service);
+            } catch (ClosedWatchServiceException e) {
+                return; // stopped
+            } catch (IOException e) {
+                LOGGER.warn("⚠️ HLS watcher failed ({}), retrying", e.getMessage());
+                sleepQuietly(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void watchStream(WatchService service, Path dir) throws IOException {
+        String streamKey = dir.getFileName().toString();
+        if (Files.isDirectory(dir) && SessionRegistry.isValidKey(streamKey)) {
+            watchedKeys.put(dir.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), streamKey);
+        }
+    }
+
+    private void drainEvents(WatchService service) throws InterruptedException, IOException {
+        while (running) {
+            WatchKey key = service.take();
+            String streamKey = watchedKeys.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                watchEvents.increment();
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    clear(); // lost track - start over from disk
+                    continue;
+                }
+                Path name = (Path) event.context();
+                if (streamKey == null) {
+                    continue;
+                }
+                if (streamKey.isEmpty()) {
+                    // A stream directory came or went
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                        watchStream(service, root.resolve(name));
+                    }
+                    continue;
+                }
+                onFileEvent(streamKey, name.toString(), event.kind());
+            }
+            if (!key.reset()) {
+                watchedKeys.remove(key);
+                if (key.watchable().equals(root)) {
+                    return; // root deleted - go back to waiting for it
+                }
+            }
+        }
+    }
+
+    private void onFileEvent(String streamKey, String fileName, WatchEvent.Kind<?> kind) {
+        if (!isValidName(streamKey, fileName)) {
+            return; // ffmpeg's .tmp files and anything else we don't serve
+        }
+        String id = streamKey + "/" + fileName;
+        if (fileName.endsWith(".m3u8")) {
+            playlists.remove(id);
+            if (kind != StandardWatchEventKinds.ENTRY_DELETE) {
+                reloadPlaylist(streamKey, root.resolve(streamKey).resolve(fileName), id); // and pre-load its segments
+            }
+        } else {
+            invalidateSegment(id); // written again, still being written, or deleted
+        }
+    }
+
+    /**
+     * Forget everything cached
+     */
+    public void clear() {
+        playlists.clear();
+        segments.clear();
+        segmentOrder.clear();
+        cachedBytes.set(0);
+    }
+
+    private static long parseLong(String value, long fallback) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Metrics getters
+    public Path getRoot() {
+        return root;
+    }
+
+    public boolean isWatching() {
+        return !watchedKeys.isEmpty();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getDiskReads() {
+        return diskReads.sum();
+    }
+
+    public long getBytesServed() {
+        return bytesServed.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getPlaylistReloads() {
+        return playlistReloads.sum();
+    }
+
+    public long getPrefetched() {
+        return prefetched.sum();
+    }
+
+    public long getWatchEvents() {
+        return watchEvents.sum();
+    }
+
+    public long getCachedBytes() {
+        return cachedBytes.get();
+    }
+
+    public int getCachedSegments() {
+        return segments.size();
+    }
+
+    public int getCachedPlaylists() {
+        return playlists.size();
+    }
+
+    public long getBlockingRequests() {
+        return blockingRequests.sum();
+    }
+
+    public long getBlockingImmediate() {
+        return blockingImmediate.sum();
+    }
+
+    public long getBlockingHeld() {
+        return heldDelay.count.sum();
+    }
+
+    public long getBlockingTimeouts() {
+        return blockingTimeouts.sum();
+    }
+
+    public long getBlockingBusy() {
+        return blockingBusy.sum();
+    }
+
+    public int getBlockedNow() {
+        return blocked.get();
+    }
+
+    public double getAverageHoldMillis() {
+        long n = heldDelay.count.sum();
+        return n == 0 ? 0 : heldNanos.sum() / 1e6 / n;
+    }
+
+    /**
+     * Playlist age when a held request was answered (watcher plus scheduling latency)
+     */
+    public double getAverageBlockingDelayMillis() {
+        return heldDelay.averageMillis();
+    }
+
+    public long getMaxBlockingDelayMillis() {
+        return heldDelay.maxMillis.get();
+    }
+
+    public long getPolledPlaylists() {
+        return polledDelay.count.sum();
+    }
+
+    /**
+     * Playlist age when a plain (polling) request was answered
+     */
+    public double getAveragePolledDelayMillis() {
+        return polledDelay.averageMillis();
+    }
+
+    public long getMaxPolledDelayMillis() {
+        return polledDelay.maxMillis.get();
+    }
+}
@@ -0,0 +1,103 @@
+package com.mts;
+
+/**
+ * Reusable holder for one decoded inbound WebSocket frame.
+ * Each connection owns one instance; Jetty delivers a connection's
+ * messages one at a time, so it is refilled in place for every frame.
+ *
+ * LO1: Encapsulation - fields are only written by InboundMessageCodec
+ */
+public final class InboundMessage {
+
+    public static final String TYPE_IDENTIFY = "identify";
+    public static final String TYPE_CHAT = "chat";
+    public static final String TYPE_UNKNOWN = "unknown";
+
+    String type;
+    final StringBuilder text = new StringBuilder(64);
+    boolean hasText;
+    boolean textTruncated;
+    String author;
+    boolean authorTooLong;
+    String username;
+    boolean usernameTooLong;
+    String room;
+    boolean roomTooLong;
+    Boolean batch;
+    long lastSeq;
+
+    /**
+     * Clear everything left over from the previous frame
+     */
+    void reset() {
+        type = TYPE_UNKNOWN;
+        text.setLength(0);
+        hasText = false;
+        textTruncated = false;
+        author = null;
+        authorTooLong = false;
+        username = null;
+        usernameTooLong = false;
+        room = null;
+        roomTooLong = false;
+        batch = null;
+        lastSeq = -1;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Chat text, trimmed and cut to ChatSanitizer.MAX_CODE_POINTS code points
+     */
+    public CharSequence getText() {
+        return text;
+    }
+
+    public boolean hasText() {
+        return hasText;
+    }
+
+    /**
+     * True if non-whitespace content was cut off at the length cap
+     */
+    public boolean isTextTruncated() {
+        return textTruncated;
+    }
+
+    /**
+     * Author with surrounding whitespace removed, or null if absent or over the cap
+     */
+    public String getAuthor() {
+        return authorTooLong ? null : author;
+    }
+
+    /**
+     * Username with surrounding whitespace removed, or null if absent or over the cap
+     */
+    public String getUsername() {
+        return usernameTooLong ? null : username;
+    }
+
+    /**
+     * Stream key of the room to join, or null if absent or over the cap
+     */
+    public String getRoom() {
+        return roomTooLong ? null : room;
+    }
+
+    /**
+     * Batching preference from identify, or null if not sent
+     */
+    public Boolean getBatch() {
+        return batch;
+    }
+
+    /**
+     * Last chat sequence id the client saw before reconnecting, or -1 if not sent
+     */
+    public long getLastSeq() {
+        return lastSeq;
+    }
+}
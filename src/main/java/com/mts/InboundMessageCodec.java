@@ -0,0 +1,452 @@
+package com.mts;
+
+import com.google.gson.JsonSyntaxException;
+
+/**
+ * Streaming decoder for inbound chat frames.
+ * Walks the JSON text once and copies out only the fields the handler
+ * uses (type, text, author, username, room, batch, lastSeq) into a reusable
+ * {@link InboundMessage}; everything else is skipped without building a
+ * tree. Length caps are applied while scanning, so an oversized "text"
+ * never gets materialised as a String; chat text comes out trimmed and
+ * cut to ChatSanitizer.MAX_CODE_POINTS.
+ *
+ * One codec per connection - not thread-safe.
+ * LO7: Exception Handling - malformed input raises JsonSyntaxException
+ */
+public final class InboundMessageCodec {
+
+    // Chars kept while scanning: enough for ChatSanitizer.MAX_CODE_POINTS even if every one is a surrogate pair
+    static final int MAX_TEXT_LENGTH = 2 * ChatSanitizer.MAX_CODE_POINTS;
+    static final int MAX_NAME_LENGTH = 50;
+    static final int MAX_ROOM_LENGTH = 64;
+    private static final int MAX_TYPE_LENGTH = 32;
+
+    private static final int FIELD_OTHER = 0;
+    private static final int FIELD_TYPE = 1;
+    private static final int FIELD_TEXT = 2;
+    private static final int FIELD_AUTHOR = 3;
+    private static final int FIELD_USERNAME = 4;
+    private static final int FIELD_BATCH = 5;
+    private static final int FIELD_LAST_SEQ = 6;
+    private static final int FIELD_ROOM = 7;
+
+    private final InboundMessage message = new InboundMessage();
+    private final StringBuilder scratch = new StringBuilder(64);
+
+    private String in;
+    private int pos;
+    private int end;
+
+    /**
+     * Cheap check, before decoding, for an identify frame: walks the
+     * top-level keys up to "type" (in any position, with any whitespace),
+     * skipping other values without copying them. Malformed frames answer
+     * false and are reported by decode. The decoded type is what counts.
+     */
+    boolean isIdentify(String frame) {
+        in = frame;
+        pos = 0;
+        end = frame.length();
+        try {
+            skipWhitespace();
+            expect('{');
+            while (true) {
+                skipWhitespace();
+                if (peek() == '}') {
+                    return false;
+                }
+                expect('"');
+                int field = readFieldName();
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                if (field == FIELD_TYPE) {
+                    if (peek() != '"') {
+                        return false;
+                    }
+                    pos++;
+                    scratch.setLength(0);
+                    captureString(scratch, MAX_TYPE_LENGTH, false);
+                    return scratch.length() == 8 && matches(scratch, 0, InboundMessage.TYPE_IDENTIFY);
+                }
+                skipValue();
+                skipWhitespace();
+                if (next() != ',') {
+                    return false;
+                }
+            }
+        } catch (JsonSyntaxException e) {
+            return false;
+        } finally {
+            in = null;
+        }
+    }
+
+    /**
+     * Decode one frame into this codec's holder (overwritten by the next call)
+     */
+    public InboundMessage decode(String frame) {
+        message.reset();
+        in = frame;
+        pos = 0;
+        end = frame.length();
+        try {
+            skipWhitespace();
+            expect('{');
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+            } else {
+                while (true) {
+                    skipWhitespace();
+                    expect('"');
+                    int field = readFieldName();
+                    skipWhitespace();
+                    expect(':');
+                    skipWhitespace();
+                    readField(field);
+                    skipWhitespace();
+                    char c = next();
+                    if (c == '}') {
+                        break;
+                    }
+                    if (c != ',') {
+                        throw error("Expected ',' or '}'");
+                    }
+                }
+            }
+            skipWhitespace();
+            if (pos < end) {
+                throw error("Unexpected data after JSON object");
+            }
+            return message;
+        } finally {
+            in = null;
+        }
+    }
+
+    /**
+     * Decode one binary-protocol frame into the same holder (see ChatWireCodec)
+     * @throws IllegalArgumentException if the frame is malformed
+     */
+    public InboundMessage decode(byte[] frame, int offset, int length) {
+        return ChatWireCodec.decode(frame, offset, length, message);
+    }
+
+    /**
+     * Identify the field whose name starts at pos (opening quote already consumed)
+     */
+    private int readFieldName() {
+        int start = pos;
+        while (pos < end) {
+            char c = in.charAt(pos);
+            if (c == '"') {
+                int length = pos - start;
+                pos++;
+                return fieldId(in, start, length);
+            }
+            if (c == '\\') {
+                // Escaped key (rare) - decode it properly before matching
+                pos = start;
+                scratch.setLength(0);
+                captureString(scratch, MAX_TYPE_LENGTH, false);
+                return fieldId(scratch, 0, scratch.length());
+            }
+            pos++;
+        }
+        throw error("Unterminated field name");
+    }
+
+    private static int fieldId(CharSequence source, int start, int length) {
+        switch (length) {
+            case 4:
+                if (matches(source, start, "type")) return FIELD_TYPE;
+                if (matches(source, start, "text")) return FIELD_TEXT;
+                if (matches(source, start, "room")) return FIELD_ROOM;
+                return FIELD_OTHER;
+            case 5:
+                return matches(source, start, "batch") ? FIELD_BATCH : FIELD_OTHER;
+            case 6:
+                return matches(source, start, "author") ? FIELD_AUTHOR : FIELD_OTHER;
+            case 7:
+                return matches(source, start, "lastSeq") ? FIELD_LAST_SEQ : FIELD_OTHER;
+            case 8:
+                return matches(source, start, "username") ? FIELD_USERNAME : FIELD_OTHER;
+            default:
+                return FIELD_OTHER;
+        }
+    }
+
+    private static boolean matches(CharSequence source, int start, String name) {
+        for (int i = 0; i < name.length(); i++) {
+            if (source.charAt(start + i) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void readField(int field) {
+        char c = peek();
+        if (field == FIELD_OTHER || (c != '"' && field != FIELD_BATCH && field != FIELD_LAST_SEQ)) {
+            skipValue(); // unknown field, or null/number where a string was expected
+            return;
+        }
+
+        switch (field) {
+            case FIELD_TYPE:
+                pos++;
+                scratch.setLength(0);
+                captureString(scratch, MAX_TYPE_LENGTH, false);
+                message.type = knownType(scratch);
+                break;
+            case FIELD_TEXT:
+                pos++;
+                message.text.setLength(0);
+                boolean overflow = captureString(message.text, MAX_TEXT_LENGTH, true);
+                message.textTruncated = ChatSanitizer.truncate(message.text, overflow);
+                message.hasText = true;
+                break;
+            case FIELD_AUTHOR:
+                pos++;
+                message.authorTooLong = captureName(MAX_NAME_LENGTH);
+                message.author = scratch.toString();
+                break;
+            case FIELD_USERNAME:
+                pos++;
+                message.usernameTooLong = captureName(MAX_NAME_LENGTH);
+                message.username = scratch.toString();
+                break;
+            case FIELD_ROOM:
+                pos++;
+                message.roomTooLong = captureName(MAX_ROOM_LENGTH);
+                message.room = scratch.toString();
+                break;
+            case FIELD_BATCH:
+                if (in.startsWith("true", pos)) {
+                    pos += 4;
+                    message.batch = Boolean.TRUE;
+                } else if (in.startsWith("false", pos)) {
+                    pos += 5;
+                    message.batch = Boolean.FALSE;
+                } else {
+                    skipValue();
+                }
+                break;
+            case FIELD_LAST_SEQ:
+                message.lastSeq = readSequence();
+                break;
+            default:
+                skipValue();
+        }
+    }
+
+    /**
+     * Non-negative integer; anything else (null, fractions, huge values) counts as absent
+     */
+    private long readSequence() {
+        int start = pos;
+        long value = 0;
+        while (pos < end && pos - start < 18) {
+            int digit = in.charAt(pos) - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            value = value * 10 + digit;
+            pos++;
+        }
+        if (pos == start || (pos < end && Character.isLetterOrDigit(in.charAt(pos))) || peek() == '.') {
+            pos = start;
+            skipValue();
+            return -1;
+        }
+        return value;
+    }
+
+    private static String knownType(CharSequence value) {
+        if (value.length() == 4 && matches(value, 0, InboundMessage.TYPE_CHAT)) {
+            return InboundMessage.TYPE_CHAT;
+        }
+        if (value.length() == 8 && matches(value, 0, InboundMessage.TYPE_IDENTIFY)) {
+            return InboundMessage.TYPE_IDENTIFY;
+        }
+        return value.length() == 0 ? InboundMessage.TYPE_UNKNOWN : value.toString();
+    }
+
+    /**
+     * Capture a trimmed author/username/room into scratch
+     * @return true if it is longer than limit
+     */
+    private boolean captureName(int limit) {
+        scratch.setLength(0);
+        boolean tooLong = captureString(scratch, limit, true);
+        if (!tooLong) {
+            trimTrailing(scratch);
+        }
+        return tooLong;
+    }
+
+    /**
+     * Decode a JSON string body (opening quote already consumed) into out,
+     * keeping at most limit chars and consuming the rest without storing it.
+     * @param skipLeading drop leading whitespace (same set as String.trim)
+     * @return true if non-whitespace content was cut off at the limit
+     */
+    private boolean captureString(StringBuilder out, int limit, boolean skipLeading) {
+        boolean leading = skipLeading;
+        boolean truncated = false;
+        while (true) {
+            if (pos >= end) {
+                throw error("Unterminated string");
+            }
+            char c = in.charAt(pos++);
+            if (c == '"') {
+                return truncated;
+            }
+            if (c == '\\') {
+                c = readEscape();
+            }
+            if (leading && c <= ' ') {
+                continue;
+            }
+            leading = false;
+            if (out.length() < limit) {
+                out.append(c);
+            } else if (c > ' ') {
+                truncated = true;
+            }
+        }
+    }
+
+    private char readEscape() {
+        if (pos >= end) {
+            throw error("Unterminated escape");
+        }
+        char c = in.charAt(pos++);
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                return c;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                if (pos + 4 > end) {
+                    throw error("Truncated unicode escape");
+                }
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(in.charAt(pos++), 16);
+                    if (digit < 0) {
+                        throw error("Invalid unicode escape");
+                    }
+                    value = (value << 4) | digit;
+                }
+                return (char) value;
+            default:
+                throw error("Invalid escape '\\" + c + "'");
+        }
+    }
+
+    /**
+     * Skip any JSON value (string, number, literal, object or array)
+     */
+    private void skipValue() {
+        char c = peek();
+        if (c == '"') {
+            pos++;
+            skipString();
+        } else if (c == '{' || c == '[') {
+            int depth = 0;
+            while (pos < end) {
+                char d = in.charAt(pos++);
+                if (d == '"') {
+                    skipString();
+                } else if (d == '{' || d == '[') {
+                    depth++;
+                } else if (d == '}' || d == ']') {
+                    if (--depth == 0) {
+                        return;
+                    }
+                }
+            }
+            throw error("Unterminated " + (c == '{' ? "object" : "array"));
+        } else {
+            int start = pos;
+            while (pos < end) {
+                char d = in.charAt(pos);
+                if (d == ',' || d == '}' || d == ']' || d <= ' ') {
+                    break;
+                }
+                pos++;
+            }
+            if (pos == start) {
+                throw error("Expected a value");
+            }
+        }
+    }
+
+    private void skipString() {
+        while (pos < end) {
+            char c = in.charAt(pos++);
+            if (c == '"') {
+                return;
+            }
+            if (c == '\\') {
+                pos++;
+            }
+        }
+        throw error("Unterminated string");
+    }
+
+    private static void trimTrailing(StringBuilder sb) {
+        int length = sb.length();
+        while (length > 0 && sb.charAt(length - 1) <= ' ') {
+            length--;
+        }
+        sb.setLength(length);
+    }
+
+    private void skipWhitespace() {
+        while (pos < end) {
+            char c = in.charAt(pos);
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private char peek() {
+        if (pos >= end) {
+            throw error("Unexpected end of frame");
+        }
+        return in.charAt(pos);
+    }
+
+    private char next() {
+        char c = peek();
+        pos++;
+        return c;
+    }
+
+    private void expect(char expected) {
+        if (next() != expected) {
+            pos--;
+            throw error("Expected '" + expected + "'");
+        }
+    }
+
+    private JsonSyntaxException error(String reason) {
+        return new JsonSyntaxException(reason + " at position " + pos);
+    }
+}
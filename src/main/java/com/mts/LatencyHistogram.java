@@ -0,0 +1,109 @@
+package com.mts;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-bucket latency histogram for hot paths.
+ * Buckets step 1 / 2.5 / 5 per decade from 1 µs to 10 s (plus overflow),
+ * the same upper bounds Prometheus clients use, so /api/metrics can publish
+ * them as they are.
+ *
+ * record() is a binary search over a static array and two LongAdder adds:
+ * nothing is allocated, and threads recording at once spread over
+ * LongAdder's cells instead of contending on one counter.
+ */
+public final class LatencyHistogram {
+
+    /** Upper bound of each bucket in nanoseconds; the last bucket has none */
+    static final long[] BOUNDS_NANOS = {
+            1_000L, 2_500L, 5_000L,
+            10_000L, 25_000L, 50_000L,
+            100_000L, 250_000L, 500_000L,
+            1_000_000L, 2_500_000L, 5_000_000L,
+            10_000_000L, 25_000_000L, 50_000_000L,
+            100_000_000L, 250_000_000L, 500_000_000L,
+            1_000_000_000L, 2_500_000_000L, 5_000_000_000L,
+            10_000_000_000L
+    };
+
+    /** The bounds in seconds as Prometheus "le" labels */
+    static final String[] BOUNDS_SECONDS = new String[BOUNDS_NANOS.length];
+
+    static {
+        for (int i = 0; i < BOUNDS_NANOS.length; i++) {
+            BOUNDS_SECONDS[i] = BigDecimal.valueOf(BOUNDS_NANOS[i], 9).stripTrailingZeros().toPlainString();
+        }
+    }
+
+    private final LongAdder[] buckets = new LongAdder[BOUNDS_NANOS.length + 1];
+    private final LongAdder sumNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        int index = Arrays.binarySearch(BOUNDS_NANOS, value);
+        buckets[index >= 0 ? index : -index - 1].increment();
+        sumNanos.add(value);
+    }
+
+    /**
+     * Record the time since startNanos (a System.nanoTime() reading)
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Per-bucket counts, not cumulative; the last entry is the overflow bucket
+     */
+    public long[] getBucketCounts() {
+        long[] counts = new long[buckets.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return counts;
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    public long getSumNanos() {
+        return sumNanos.sum();
+    }
+
+    /**
+     * Upper bound of the bucket holding the given quantile (0..1), in
+     * nanoseconds; Long.MAX_VALUE if it is in the overflow bucket, 0 if empty
+     */
+    public long getQuantileNanos(double quantile) {
+        long[] counts = getBucketCounts();
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(Math.min(1.0, Math.max(0.0, quantile)) * total);
+        long seen = 0;
+        for (int i = 0; i < BOUNDS_NANOS.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return BOUNDS_NANOS[i];
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+}
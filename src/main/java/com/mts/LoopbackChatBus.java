@@ -0,0 +1,101 @@
+package com.mts;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LO4: Inheritance & Polymorphism - Implements ChatBus inside one JVM
+ *
+ * Buses that share a group name deliver to each other, each on its own
+ * single delivery thread (so per-origin order holds and a publisher never
+ * runs another node's fan-out). Useful for running several nodes in one
+ * process and as the no-network reference for the TCP mesh.
+ */
+public class LoopbackChatBus implements ChatBus {
+
+    private static final Map<String, Set<LoopbackChatBus>> groups = new ConcurrentHashMap<>();
+
+    private final String group;
+    private final LongAdder sent = new LongAdder();
+    private volatile ExecutorService delivery;
+    private volatile Receiver receiver;
+
+    public LoopbackChatBus(String group) {
+        this.group = group;
+    }
+
+    @Override
+    public void start(Receiver receiver) {
+        this.receiver = receiver;
+        this.delivery = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "chat-bus-loopback");
+            t.setDaemon(true);
+            return t;
+        });
+        groups.computeIfAbsent(group, key -> ConcurrentHashMap.newKeySet()).add(this);
+    }
+
+    @Override
+    public void publish(ClusterMessage message) {
+        Set<LoopbackChatBus> members = groups.get(group);
+        if (members == null) {
+            return;
+        }
+        for (LoopbackChatBus member : members) {
+            if (member != this && member.deliver(message)) {
+                sent.increment();
+            }
+        }
+    }
+
+    private boolean deliver(ClusterMessage message) {
+        ExecutorService executor = delivery;
+        if (executor == null) {
+            return false;
+        }
+        try {
+            executor.execute(() -> receiver.receive(message));
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false; // stopping
+        }
+    }
+
+    @Override
+    public void stop() {
+        groups.computeIfPresent(group, (key, members) -> {
+            members.remove(this);
+            return members.isEmpty() ? null : members;
+        });
+        ExecutorService executor = delivery;
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "loopback:" + group;
+    }
+
+    @Override
+    public int getConnectedPeers() {
+        Set<LoopbackChatBus> members = groups.get(group);
+        return members != null && members.contains(this) ? members.size() - 1 : 0;
+    }
+
+    @Override
+    public long getSent() {
+        return sent.sum();
+    }
+
+    @Override
+    public long getDropped() {
+        return 0;
+    }
+}
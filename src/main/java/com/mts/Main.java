@@ -1,21 +1,31 @@
 package com.mts;
 
 import java.io.File;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import com.google.gson.JsonSyntaxException;
 
+import spark.Request;
+import spark.Route;
+import spark.Spark;
+
 import static spark.Spark.awaitInitialization;
 import static spark.Spark.before;
-import static spark.Spark.get;
 import static spark.Spark.init;
 import static spark.Spark.notFound;
 import static spark.Spark.options;
 import static spark.Spark.port;
-import static spark.Spark.post;
 import static spark.Spark.staticFiles;
 import static spark.Spark.webSocket;
 
@@ -33,22 +43,34 @@ import static spark.Spark.webSocket;
 public class Main {
     private static final Gson gson = new Gson();
     
-    // CRITICAL: Explicitly initialize to null to prevent ghost sessions
-    private static StreamSession activeSession = null;
-    private static StreamSession lastSession = null; // For summary page
+    static final int PORT = Config.getInt("metastream.port", 8080);
+    
+    // Live sessions by stream key; several streams can run side by side
+    private static final SessionRegistry registry = new SessionRegistry();
+    private static final SessionMetricsSampler sampler = new SessionMetricsSampler(registry);
+    
+    // Playlists and segments from media-server/media/live, read from disk once and served from memory
+    private static final HlsCache hlsCache = new HlsCache();
+    
+    // LO4: Polymorphism - dispatchers are NotificationServices that deliver off the request thread
+    private static final NotificationDispatcher tts = new NotificationDispatcher(new TTSNotifier());
+    private static final NotificationDispatcher sms = new NotificationDispatcher(new SMSNotifier());
 
     public static void main(String[] args) {
         // ================================================================
         // FORCE RESET: Clear any ghost session state on startup
         // ================================================================
-        activeSession = null;
-        lastSession = null;
+        registry.clear();
+        sampler.start();
+        hlsCache.start();
+        WebSocketHandler.getCluster().start(); // no-op unless -Dmetastream.cluster.bus=LOOPBACK|TCP
         System.out.println("🔄 System initialized - all session state cleared");
         
         // ================================================================
         // Server Configuration
         // ================================================================
-        port(8080);
+        ServerThreads.configure(); // classic pool or virtual threads (-Dmetastream.threads=VIRTUAL)
+        port(PORT);
         staticFiles.location("/public");
         
         // ================================================================
@@ -79,6 +101,15 @@ public class Main {
             res.header("Access-Control-Allow-Headers", "Content-Type, Authorization");
         });
         
+        // Binary chat protocol: echo the subprotocol on the /ws upgrade when the client offers it
+        // (Jetty completes the 101 response on top of the headers set here)
+        before("/ws", (req, res) -> {
+            String offered = req.headers("Sec-WebSocket-Protocol");
+            if (offered != null && ChatWireCodec.negotiate(Arrays.asList(offered.split(","))) != null) {
+                res.header("Sec-WebSocket-Protocol", ChatWireCodec.BINARY_PROTOCOL);
+            }
+        });
+        
         // ================================================================
         // API: Health Check
         // ================================================================
@@ -87,13 +118,301 @@ public class Main {
             
             JsonObject health = new JsonObject();
             health.addProperty("backend", "ok");
-            health.addProperty("activeSession", activeSession != null);
-            health.addProperty("mediaServer", MediaServerClient.isMediaServerHealthy());
+            health.addProperty("activeSession", registry.getActiveCount() > 0);
+            health.addProperty("activeStreams", registry.getActiveCount());
+            // Answered from the background probe - never waits on the media server
+            MediaServerHealthMonitor.Snapshot media = MediaServerClient.getHealthSnapshot();
+            health.addProperty("mediaServer", media.isHealthy());
+            JsonObject probe = new JsonObject();
+            probe.addProperty("circuit", media.getCircuitState().name());
+            probe.addProperty("ageMs", media.getAgeMillis());
+            probe.addProperty("latencyMs", media.getLatencyMillis());
+            probe.addProperty("consecutiveFailures", media.getConsecutiveFailures());
+            probe.addProperty("streaming", media.isStreaming());
+            if (media.getLastError() != null) {
+                probe.addProperty("lastError", media.getLastError());
+            }
+            health.add("mediaServerProbe", probe);
+            
+            JsonObject threads = new JsonObject();
+            threads.addProperty("mode", ServerThreads.getMode().name());
+            threads.addProperty("platformThreads", ServerThreads.getPlatformThreadCount());
+            threads.addProperty("peakPlatformThreads", ServerThreads.getPeakPlatformThreadCount());
+            threads.addProperty("virtualThreadTasks", ServerThreads.getVirtualThreadTasks());
+            health.add("threads", threads);
             health.addProperty("timestamp", System.currentTimeMillis());
             
             return gson.toJson(health);
         });
         
+        // ================================================================
+        // API: Metrics (Prometheus text format)
+        // Latency histograms and counters from the routes, chat path,
+        // log writes and media server probes
+        // ================================================================
+        Metrics.gauge("metastream_streams_active", "Stream sessions running", registry::getActiveCount);
+        Metrics.gauge("metastream_ws_connections", "Open chat WebSocket connections",
+                WebSocketHandler::getActiveSessionCount);
+        get("/api/metrics", (req, res) -> {
+            res.type(Metrics.CONTENT_TYPE);
+            return Metrics.scrape();
+        });
+        
+        // ================================================================
+        // API: Diagnostic Log Level (DEBUG on demand, no restart)
+        // ================================================================
+        get("/api/debug/log-level", (req, res) -> {
+            res.type("application/json");
+            
+            JsonObject response = new JsonObject();
+            response.addProperty("logger", "com.mts");
+            response.addProperty("level", backendLogger().getEffectiveLevel().toString());
+            return gson.toJson(response);
+        });
+        
+        post("/api/debug/log-level", (req, res) -> {
+            res.type("application/json");
+            
+            String requested = req.queryParams("level");
+            if (requested == null || requested.trim().isEmpty()) {
+                res.status(400);
+                JsonObject error = new JsonObject();
+                error.addProperty("error", "Query parameter 'level' is required (e.g. DEBUG, INFO)");
+                return gson.toJson(error);
+            }
+            
+            Level level = Level.toLevel(requested.trim(), null);
+            if (level == null) {
+                res.status(400);
+                JsonObject error = new JsonObject();
+                error.addProperty("error", "Unknown log level: " + requested);
+                return gson.toJson(error);
+            }
+            
+            backendLogger().setLevel(level);
+            System.out.println("🔧 Backend log level set to " + level);
+            
+            JsonObject response = new JsonObject();
+            response.addProperty("logger", "com.mts");
+            response.addProperty("level", level.toString());
+            return gson.toJson(response);
+        });
+        
+        // ================================================================
+        // API: Chat Connection Stats (outbound queue depth / drops)
+        // ================================================================
+        get("/api/chat/connections", (req, res) -> {
+            res.type("application/json");
+            
+            JsonArray connections = new JsonArray();
+            for (ClientConnection connection : WebSocketHandler.getConnections()) {
+                JsonObject conn = new JsonObject();
+                conn.addProperty("username", connection.getUsername());
+                conn.addProperty("remoteAddress", connection.getRemoteAddress());
+                ChatRoom room = connection.getRoom();
+                conn.addProperty("room", room != null ? room.getName() : null);
+                conn.addProperty("queueDepth", connection.getQueueDepth());
+                conn.addProperty("peakQueueDepth", connection.getPeakQueueDepth());
+                conn.addProperty("batching", connection.isBatching());
+                conn.addProperty("protocol", connection.isBinaryProtocol() ? ChatWireCodec.BINARY_PROTOCOL : "json");
+                conn.addProperty("bytesSent", connection.getBytesSent());
+                WebSocketCompression.PerMessageDeflate deflate = connection.getCompression();
+                conn.addProperty("compressed", deflate != null);
+                if (deflate != null) {
+                    conn.addProperty("compressionRatio", Math.round(deflate.getRatio() * 1000) / 1000.0);
+                    conn.addProperty("contextTakeover", deflate.isContextTakeover());
+                    conn.addProperty("compressionMemoryBytes", deflate.getRetainedBytes());
+                }
+                conn.addProperty("framesSent", connection.getSentCount());
+                conn.addProperty("messagesSent", connection.getMessagesSent());
+                conn.addProperty("batchesSent", connection.getBatchesSent());
+                conn.addProperty("dropped", connection.getDroppedCount());
+                conn.addProperty("failed", connection.getFailedCount());
+                conn.addProperty("evicted", connection.isEvicted());
+                ChatRateLimiter.Allowance allowance = connection.getAllowance();
+                conn.addProperty("rateLimited", allowance != null ? allowance.getRejected() : 0);
+                connections.add(conn);
+            }
+            
+            JsonObject response = new JsonObject();
+            response.addProperty("queueCapacity", ClientConnection.QUEUE_CAPACITY);
+            response.addProperty("overflowPolicy", ClientConnection.OVERFLOW_POLICY.name());
+            response.addProperty("totalDropped", ClientConnection.getTotalDropped());
+            response.addProperty("totalEvicted", ClientConnection.getTotalEvicted());
+            
+            // Frames vs messages shows how much batching saves (one write per frame)
+            JsonObject batching = new JsonObject();
+            batching.addProperty("windowMs", ClientConnection.BATCH_WINDOW_MS);
+            batching.addProperty("maxItems", ClientConnection.BATCH_MAX_ITEMS);
+            batching.addProperty("framesSent", ClientConnection.getTotalFrames());
+            batching.addProperty("messagesSent", ClientConnection.getTotalMessages());
+            batching.addProperty("batchesSent", ClientConnection.getTotalBatches());
+            response.add("batching", batching);
+            
+            // Payload bytes written per wire format
+            JsonObject wire = new JsonObject();
+            wire.addProperty("textBytes", ClientConnection.getTotalTextBytes());
+            wire.addProperty("binaryBytes", ClientConnection.getTotalBinaryBytes());
+            response.add("wire", wire);
+            
+            // permessage-deflate: ratio is wire/raw over compressed messages; memory is zlib's native state
+            JsonObject compression = new JsonObject();
+            compression.addProperty("enabled", WebSocketCompression.ENABLED);
+            compression.addProperty("minBytes", WebSocketCompression.MIN_BYTES);
+            compression.addProperty("level", WebSocketCompression.LEVEL);
+            compression.addProperty("contextTakeover", WebSocketCompression.CONTEXT_TAKEOVER);
+            compression.addProperty("negotiated", WebSocketCompression.getNegotiated());
+            compression.addProperty("activeConnections", WebSocketCompression.getActive());
+            compression.addProperty("compressedMessages", WebSocketCompression.getCompressedMessages());
+            compression.addProperty("rawBytes", WebSocketCompression.getCompressedRawBytes());
+            compression.addProperty("wireBytes", WebSocketCompression.getCompressedWireBytes());
+            compression.addProperty("ratio", Math.round(WebSocketCompression.getRatio() * 1000) / 1000.0);
+            compression.addProperty("skippedSmall", WebSocketCompression.getSkippedMessages());
+            compression.addProperty("skippedBytes", WebSocketCompression.getSkippedBytes());
+            compression.addProperty("sentRawNotSmaller", WebSocketCompression.getNotSmaller());
+            compression.addProperty("deflateCpuMicros", WebSocketCompression.getDeflateMicros());
+            compression.addProperty("inflatedMessages", WebSocketCompression.getInflatedMessages());
+            compression.addProperty("inflatedWireBytes", WebSocketCompression.getInflatedWireBytes());
+            compression.addProperty("inflatedRawBytes", WebSocketCompression.getInflatedRawBytes());
+            compression.addProperty("inflateCpuMicros", WebSocketCompression.getInflateMicros());
+            compression.addProperty("connectionMemoryBytes", WebSocketCompression.getRetainedBytes());
+            compression.addProperty("poolMemoryBytes", WebSocketCompression.getPooledBytes());
+            response.add("compression", compression);
+            
+            JsonObject broadcast = new JsonObject();
+            broadcast.addProperty("broadcasts", BroadcastStats.getBroadcasts());
+            broadcast.addProperty("recipients", BroadcastStats.getRecipients());
+            broadcast.addProperty("encodedBytes", BroadcastStats.getEncodedBytes());
+            broadcast.addProperty("allocatedBytesPerBroadcast", BroadcastStats.getAllocatedBytesPerBroadcast());
+            broadcast.addProperty("allocatedBytesPerRecipient", BroadcastStats.getAllocatedBytesPerRecipient());
+            response.add("broadcast", broadcast);
+            
+            // Inbound chat limits (messages/s and burst; rate 0 = off) and what they turned away
+            ChatRateLimiter limiter = WebSocketHandler.getRateLimiter();
+            JsonObject rateLimit = new JsonObject();
+            rateLimit.addProperty("perConnection", ChatRateLimiter.CONNECTION_RATE);
+            rateLimit.addProperty("perConnectionBurst", ChatRateLimiter.CONNECTION_BURST);
+            rateLimit.addProperty("perIp", ChatRateLimiter.IP_RATE);
+            rateLimit.addProperty("perIpBurst", ChatRateLimiter.IP_BURST);
+            rateLimit.addProperty("perRoom", ChatRateLimiter.ROOM_RATE);
+            rateLimit.addProperty("perRoomBurst", ChatRateLimiter.ROOM_BURST);
+            rateLimit.addProperty("allowed", limiter.getAllowed());
+            rateLimit.addProperty("rejectedConnection", limiter.getRejectedConnection());
+            rateLimit.addProperty("rejectedIp", limiter.getRejectedIp());
+            rateLimit.addProperty("rejectedRoom", limiter.getRejectedRoom());
+            rateLimit.addProperty("noticesSent", limiter.getNoticesSent());
+            rateLimit.addProperty("trackedHosts", limiter.getTrackedHosts());
+            response.add("rateLimit", rateLimit);
+            
+            JsonObject rooms = new JsonObject();
+            for (ChatRoom room : WebSocketHandler.getRooms()) {
+                rooms.addProperty(room.getName(), room.getMemberCount());
+            }
+            response.add("rooms", rooms);
+            response.add("connections", connections);
+            
+            return gson.toJson(response);
+        });
+        
+        // ================================================================
+        // API: Chat Cluster (messages exchanged with other backends)
+        // ================================================================
+        get("/api/chat/cluster", (req, res) -> {
+            res.type("application/json");
+            
+            ChatCluster cluster = WebSocketHandler.getCluster();
+            JsonObject response = new JsonObject();
+            response.addProperty("nodeId", cluster.getNodeId());
+            response.addProperty("transport", ChatCluster.TRANSPORT.name());
+            response.addProperty("published", cluster.getPublished());
+            response.addProperty("received", cluster.getReceived());
+            response.addProperty("duplicates", cluster.getDuplicates());
+            response.addProperty("missed", cluster.getMissed());
+            response.addProperty("deliveryErrors", cluster.getDeliveryErrors());
+            response.addProperty("knownOrigins", cluster.getKnownOrigins());
+            
+            ChatBus bus = cluster.getBus();
+            if (bus != null) {
+                JsonObject busStats = new JsonObject();
+                busStats.addProperty("name", bus.getName());
+                busStats.addProperty("connectedPeers", bus.getConnectedPeers());
+                busStats.addProperty("sent", bus.getSent());
+                busStats.addProperty("dropped", bus.getDropped());
+                if (bus instanceof TcpMeshChatBus) {
+                    TcpMeshChatBus mesh = (TcpMeshChatBus) bus;
+                    busStats.addProperty("configuredPeers", mesh.getConfiguredPeers());
+                    busStats.addProperty("inboundConnections", mesh.getInboundConnections());
+                    busStats.addProperty("resent", mesh.getResent());
+                }
+                response.add("bus", busStats);
+            }
+            
+            return gson.toJson(response);
+        });
+        
+        // ================================================================
+        // API: Chat Journal Stats (group commit batch size / flush latency)
+        // ================================================================
+        get("/api/chat/journal", (req, res) -> {
+            res.type("application/json");
+            
+            ChatJournal journal = ChatJournal.getInstance();
+            JsonObject response = new JsonObject();
+            response.addProperty("file", journal.getPath().toString());
+            response.addProperty("fsyncPolicy", journal.getFsyncPolicy().name());
+            response.addProperty("fsyncIntervalMs", ChatJournal.FSYNC_INTERVAL_MS);
+            response.addProperty("queueDepth", journal.getQueueDepth());
+            response.addProperty("appended", journal.getAppended());
+            response.addProperty("linesWritten", journal.getLinesWritten());
+            response.addProperty("bytesWritten", journal.getBytesWritten());
+            response.addProperty("batches", journal.getBatches());
+            response.addProperty("averageBatchSize", journal.getAverageBatchSize());
+            response.addProperty("maxBatchSize", journal.getMaxBatchSize());
+            response.addProperty("fsyncs", journal.getFsyncs());
+            response.addProperty("lastFlushMicros", journal.getLastFlushMicros());
+            response.addProperty("averageFlushMicros", journal.getAverageFlushMicros());
+            response.addProperty("maxFlushMicros", journal.getMaxFlushMicros());
+            response.addProperty("backpressureStalls", journal.getBackpressureStalls());
+            response.addProperty("dropped", journal.getDropped());
+            response.addProperty("rejected", journal.getRejected());
+            response.addProperty("writeErrors", journal.getWriteErrors());
+            
+            return gson.toJson(response);
+        });
+        
+        // ================================================================
+        // API: Notification Dispatch Stats (queue depth / delivery latency)
+        // ================================================================
+        get("/api/notifications", (req, res) -> {
+            res.type("application/json");
+            
+            JsonArray dispatchers = new JsonArray();
+            for (NotificationDispatcher dispatcher : new NotificationDispatcher[] { tts, sms }) {
+                JsonObject stats = new JsonObject();
+                stats.addProperty("name", dispatcher.getName());
+                stats.addProperty("queueDepth", dispatcher.getQueueDepth());
+                stats.addProperty("active", dispatcher.getActiveDeliveries());
+                stats.addProperty("submitted", dispatcher.getSubmitted());
+                stats.addProperty("coalesced", dispatcher.getCoalesced());
+                stats.addProperty("rejected", dispatcher.getRejected());
+                stats.addProperty("delivered", dispatcher.getDelivered());
+                stats.addProperty("retried", dispatcher.getRetried());
+                stats.addProperty("failed", dispatcher.getFailed());
+                stats.addProperty("lastLatencyMicros", dispatcher.getLastLatencyMicros());
+                stats.addProperty("avgLatencyMicros", dispatcher.getAverageLatencyMicros());
+                stats.addProperty("maxLatencyMicros", dispatcher.getMaxLatencyMicros());
+                dispatchers.add(stats);
+            }
+            
+            JsonObject response = new JsonObject();
+            response.addProperty("workers", NotificationDispatcher.WORKERS);
+            response.addProperty("queueCapacity", NotificationDispatcher.QUEUE_CAPACITY);
+            response.addProperty("coalesceMs", NotificationDispatcher.COALESCE_MS);
+            response.addProperty("maxAttempts", NotificationDispatcher.MAX_ATTEMPTS);
+            response.add("dispatchers", dispatchers);
+            return gson.toJson(response);
+        });
+        
         // ================================================================
         // API: Start Stream Session
         // ================================================================
@@ -101,15 +420,6 @@ public class Main {
             res.type("application/json");
             
             try {
-                // LO7: Exception Handling - Validate session state
-                if (activeSession != null) {
-                    res.status(409); // Conflict
-                    JsonObject error = new JsonObject();
-                    error.addProperty("error", "A stream is already active. Stop it first.");
-                    error.addProperty("activeUser", activeSession.getUser().getUsername());
-                    return gson.toJson(error);
-                }
-                
                 // Parse request body
                 JsonObject body;
                 try {
@@ -132,6 +442,28 @@ public class Main {
                 String username = body.get("username").getAsString().trim();
                 boolean ttsEnabled = body.has("ttsEnabled") ? body.get("ttsEnabled").getAsBoolean() : false;
                 
+                // Optional stream key - one active session per key
+                String streamKey = body.has("streamKey") && !body.get("streamKey").isJsonNull()
+                        ? body.get("streamKey").getAsString().trim()
+                        : SessionRegistry.DEFAULT_STREAM_KEY;
+                if (!SessionRegistry.isValidKey(streamKey)) {
+                    res.status(400);
+                    JsonObject error = new JsonObject();
+                    error.addProperty("error", "Invalid stream key (letters, digits, '-' and '_', up to 64)");
+                    return gson.toJson(error);
+                }
+                
+                // LO7: Exception Handling - Validate session state
+                StreamSession running = registry.get(streamKey);
+                if (running != null) {
+                    res.status(409); // Conflict
+                    JsonObject error = new JsonObject();
+                    error.addProperty("error", "A stream is already active on this key. Stop it first.");
+                    error.addProperty("activeUser", running.getUser().getUsername());
+                    error.addProperty("streamKey", streamKey);
+                    return gson.toJson(error);
+                }
+                
                 // Verify media server is running
                 if (!MediaServerClient.isMediaServerHealthy()) {
                     res.status(503); // Service Unavailable
@@ -142,30 +474,44 @@ public class Main {
                 
                 // LO1/LO3: Create User and StreamSession (Aggregation)
                 User user = new User(username);
-                activeSession = new StreamSession(user);
-                activeSession.startSession();
+                StreamSession session = new StreamSession(user, streamKey);
+                session.startSession();
+                
+                // Viewers may already be waiting in the room
+                ChatRoom waiting = WebSocketHandler.getRoom(streamKey);
+                session.setViewerCount(waiting != null ? waiting.getMemberCount() : 0);
                 
-                // LO4: Polymorphism - Use NotificationService interface
+                // Another request may have claimed the key since the check above
+                StreamSession existing = registry.register(session);
+                if (existing != null) {
+                    res.status(409);
+                    JsonObject error = new JsonObject();
+                    error.addProperty("error", "A stream is already active on this key. Stop it first.");
+                    error.addProperty("activeUser", existing.getUser().getUsername());
+                    error.addProperty("streamKey", streamKey);
+                    return gson.toJson(error);
+                }
+                
+                // LO4: Polymorphism - Use NotificationService interface (queued, never waits)
                 if (ttsEnabled) {
-                    NotificationService tts = new TTSNotifier();
                     tts.sendNotification("Stream started by " + username);
                 }
                 
-                NotificationService sms = new SMSNotifier();
                 sms.sendNotification("🎬 Stream session created for " + username);
                 
-                System.out.println("🎬 Stream started for: " + username);
-                System.out.println("📡 RTMP Ingest: " + MediaServerClient.getRecommendedRTMPUrl());
-                System.out.println("📺 HLS Playback: " + MediaServerClient.getHLSUrl("stream"));
+                System.out.println("🎬 Stream started for: " + username + " (key: " + streamKey + ")");
+                System.out.println("📡 RTMP Ingest: " + MediaServerClient.getRecommendedRTMPUrl(streamKey));
+                System.out.println("📺 HLS Playback: " + MediaServerClient.getHLSUrl(streamKey));
                 
                 // Return session data
                 JsonObject response = new JsonObject();
                 response.addProperty("status", "started");
-                response.addProperty("sessionId", activeSession.getSessionId());
+                response.addProperty("sessionId", session.getSessionId());
+                response.addProperty("streamKey", streamKey);
                 response.addProperty("username", username);
-                response.addProperty("rtmpUrl", MediaServerClient.getRecommendedRTMPUrl());
-                response.addProperty("hlsUrl", MediaServerClient.getHLSUrl("stream"));
-                response.addProperty("startTime", activeSession.getStartTime().toString());
+                response.addProperty("rtmpUrl", MediaServerClient.getRecommendedRTMPUrl(streamKey));
+                response.addProperty("hlsUrl", MediaServerClient.getHLSUrl(streamKey));
+                response.addProperty("startTime", session.getStartTime().toString());
                 
                 res.status(200);
                 return gson.toJson(response);
@@ -187,6 +533,7 @@ public class Main {
         get("/api/stream/session", (req, res) -> {
             res.type("application/json");
             
+            StreamSession activeSession = registry.get(streamKeyParam(req));
             if (activeSession == null) {
                 res.status(404);
                 JsonObject error = new JsonObject();
@@ -198,6 +545,7 @@ public class Main {
             JsonObject response = new JsonObject();
             response.addProperty("status", "active");
             response.addProperty("sessionId", activeSession.getSessionId());
+            response.addProperty("streamKey", activeSession.getStreamKey());
             
             // User object (LO3: Aggregation)
             JsonObject userObj = new JsonObject();
@@ -206,10 +554,39 @@ public class Main {
             
             response.addProperty("duration", activeSession.getDuration());
             response.addProperty("totalMessages", activeSession.getTotalMessages());
+            response.addProperty("viewerCount", activeSession.getViewerCount());
             response.addProperty("peakViewerCount", activeSession.getPeakViewerCount());
-            response.addProperty("hlsUrl", MediaServerClient.getHLSUrl("stream"));
-            response.addProperty("rtmpUrl", MediaServerClient.getRecommendedRTMPUrl());
+            response.addProperty("messagesPerSecond", activeSession.getMessagesPerSecond());
+            response.addProperty("hlsUrl", MediaServerClient.getHLSUrl(activeSession.getStreamKey()));
+            response.addProperty("rtmpUrl", MediaServerClient.getRecommendedRTMPUrl(activeSession.getStreamKey()));
+            
+            return gson.toJson(response);
+        });
+        
+        // ================================================================
+        // API: All Active Sessions
+        // ================================================================
+        get("/api/stream/sessions", (req, res) -> {
+            res.type("application/json");
+            
+            JsonArray sessions = new JsonArray();
+            for (StreamSession session : registry.getActiveSessions()) {
+                JsonObject entry = new JsonObject();
+                entry.addProperty("sessionId", session.getSessionId());
+                entry.addProperty("streamKey", session.getStreamKey());
+                entry.addProperty("username", session.getUser().getUsername());
+                entry.addProperty("duration", session.getDuration());
+                entry.addProperty("totalMessages", session.getTotalMessages());
+                entry.addProperty("viewerCount", session.getViewerCount());
+                entry.addProperty("peakViewerCount", session.getPeakViewerCount());
+                entry.addProperty("messagesPerSecond", session.getMessagesPerSecond());
+                entry.addProperty("hlsUrl", MediaServerClient.getHLSUrl(session.getStreamKey()));
+                sessions.add(entry);
+            }
             
+            JsonObject response = new JsonObject();
+            response.addProperty("count", sessions.size());
+            response.add("sessions", sessions);
             return gson.toJson(response);
         });
         
@@ -219,6 +596,9 @@ public class Main {
         get("/api/stream/last", (req, res) -> {
             res.type("application/json");
             
+            // ?key= for one stream, otherwise whichever stream ended last
+            String key = req.queryParams("key");
+            StreamSession lastSession = key != null ? registry.getLast(key) : registry.getLast();
             if (lastSession == null) {
                 res.status(404);
                 JsonObject error = new JsonObject();
@@ -229,6 +609,7 @@ public class Main {
             JsonObject response = new JsonObject();
             response.addProperty("status", "completed");
             response.addProperty("sessionId", lastSession.getSessionId());
+            response.addProperty("streamKey", lastSession.getStreamKey());
             
             JsonObject userObj = new JsonObject();
             userObj.addProperty("username", lastSession.getUser().getUsername());
@@ -237,6 +618,7 @@ public class Main {
             response.addProperty("duration", lastSession.getDuration());
             response.addProperty("totalMessages", lastSession.getTotalMessages());
             response.addProperty("peakViewerCount", lastSession.getPeakViewerCount());
+            response.addProperty("timeseriesUrl", "/api/stream/" + lastSession.getSessionId() + "/timeseries");
             
             return gson.toJson(response);
         });
@@ -247,7 +629,10 @@ public class Main {
         post("/api/stream/stop", (req, res) -> {
             res.type("application/json");
             
+            String streamKey = streamKeyParam(req);
             try {
+                // Removing from the registry first means a double stop only logs once
+                StreamSession activeSession = registry.unregister(streamKey);
                 if (activeSession != null) {
                     // Stop the session
                     activeSession.stopSession();
@@ -257,28 +642,35 @@ public class Main {
                         FileLogger logger = new FileLogger();
                         logger.writeLog(activeSession);
                         System.out.println("✅ Stream session logged to stream_log.txt");
+                        if (logger.writeTimeSeries(activeSession) != null) {
+                            System.out.println("✅ Viewer/chat time series saved ("
+                                    + activeSession.getTimeSeries().size() + " points)");
+                        }
                     } catch (Exception e) {
                         // LO7: Exception Handling
                         System.err.println("⚠️ Failed to write log: " + e.getMessage());
                     }
                     
+                    // LO8: File I/O - Indexed session history
+                    try {
+                        SessionHistoryStore.getInstance().append(activeSession);
+                    } catch (Exception e) {
+                        // LO7: Exception Handling
+                        System.err.println("⚠️ Failed to record session history: " + e.getMessage());
+                    }
+                    
                     System.out.println("🛑 Stream ended for " + activeSession.getUser().getUsername());
                     System.out.println("   Duration: " + activeSession.getDuration());
                     System.out.println("   Messages: " + activeSession.getTotalMessages());
                     
-                    // Save for summary page BEFORE clearing
-                    lastSession = activeSession;
-                    activeSession = null;
-                    
                     JsonObject response = new JsonObject();
                     response.addProperty("status", "stopped");
                     response.addProperty("message", "Stream session ended successfully");
                     
                     return gson.toJson(response);
                 } else {
-                    // No active session - perform force reset anyway
-                    activeSession = null;
-                    lastSession = null;
+                    // No active session - perform force reset of this key anyway
+                    registry.clear(streamKey);
                     
                     JsonObject response = new JsonObject();
                     response.addProperty("status", "reset");
@@ -290,7 +682,7 @@ public class Main {
             } catch (Exception e) {
                 // LO7: Exception Handling - Always clear session on error
                 res.status(500);
-                activeSession = null; // Force clear to break ghost session loop
+                registry.unregister(streamKey); // Force clear to break ghost session loop
                 
                 JsonObject error = new JsonObject();
                 error.addProperty("error", "Error stopping stream: " + e.getMessage());
@@ -307,9 +699,14 @@ public class Main {
         post("/api/stream/reset", (req, res) -> {
             res.type("application/json");
             
-            System.out.println("🔧 Emergency reset triggered");
-            activeSession = null;
-            lastSession = null;
+            // ?key= resets one stream, otherwise everything
+            String key = req.queryParams("key");
+            System.out.println("🔧 Emergency reset triggered" + (key != null ? " for " + key : ""));
+            if (key != null) {
+                registry.clear(key);
+            } else {
+                registry.clear();
+            }
             
             JsonObject response = new JsonObject();
             response.addProperty("status", "reset");
@@ -326,9 +723,10 @@ public class Main {
             res.header("Content-Disposition", "attachment; filename=\"metastream-log.txt\"");
             
             try {
-                File logFile = new File("stream_log.txt");
+                File logFile = new File(FileLogger.LOG_FILE);
                 if (logFile.exists()) {
-                    return Files.readString(Paths.get("stream_log.txt"));
+                    // LO8: File I/O - streamed from disk, supports Range and conditional GET
+                    return FileDownload.serve(req, res, logFile.toPath());
                 } else {
                     return "No log file found. Streams will create this file automatically.";
                 }
@@ -344,9 +742,9 @@ public class Main {
             res.type("text/plain");
             
             try {
-                File logFile = new File("stream_log.txt");
+                File logFile = new File(FileLogger.LOG_FILE);
                 if (logFile.exists()) {
-                    return Files.readString(Paths.get("stream_log.txt"));
+                    return FileDownload.serve(req, res, logFile.toPath());
                 } else {
                     res.status(404);
                     return "Log file not found";
@@ -357,6 +755,223 @@ public class Main {
             }
         });
         
+        // ================================================================
+        // API: Session History (indexed, paginated)
+        // Registered after the fixed /api/stream/* routes so the
+        // :sessionId pattern cannot shadow session/last/log
+        // ================================================================
+        get("/api/stream/history", (req, res) -> {
+            res.type("application/json");
+            
+            try {
+                // ?after= (the previous page's "next") continues a listing, ?from= starts one
+                String after = req.queryParams("after");
+                int limit = parseLimit(req.queryParams("limit"));
+                SessionHistoryStore store = SessionHistoryStore.getInstance();
+                
+                JsonObject response = new JsonObject();
+                SessionHistoryStore.Page page;
+                if (after != null && !after.isBlank()) {
+                    page = store.historyAfter(after, limit);
+                    response.addProperty("after", after.trim());
+                } else {
+                    long from = parseFrom(req.queryParams("from"));
+                    page = store.history(from, limit);
+                    response.addProperty("from", from);
+                }
+                
+                JsonArray sessions = new JsonArray();
+                for (String record : page.getRecords()) {
+                    sessions.add(JsonParser.parseString(record));
+                }
+                
+                response.addProperty("limit", limit);
+                response.addProperty("total", store.size());
+                response.add("sessions", sessions);
+                if (page.getNext() != null) {
+                    response.addProperty("next", page.getNext());
+                }
+                return gson.toJson(response);
+                
+            } catch (IllegalArgumentException e) {
+                res.status(400);
+                JsonObject error = new JsonObject();
+                error.addProperty("error", e.getMessage());
+                return gson.toJson(error);
+            } catch (Exception e) {
+                // LO7: Exception Handling
+                res.status(500);
+                JsonObject error = new JsonObject();
+                error.addProperty("error", "Error reading session history: " + e.getMessage());
+                return gson.toJson(error);
+            }
+        });
+        
+        get("/api/stream/:sessionId", (req, res) -> {
+            res.type("application/json");
+            
+            try {
+                String record = SessionHistoryStore.getInstance().find(req.params(":sessionId"));
+                if (record == null) {
+                    res.status(404);
+                    JsonObject error = new JsonObject();
+                    error.addProperty("error", "Session not found");
+                    return gson.toJson(error);
+                }
+                return record; // stored as JSON already
+                
+            } catch (Exception e) {
+                // LO7: Exception Handling
+                res.status(500);
+                JsonObject error = new JsonObject();
+                error.addProperty("error", "Error reading session history: " + e.getMessage());
+                return gson.toJson(error);
+            }
+        });
+        
+        // ================================================================
+        // API: Viewer / Chat Time Series (live while streaming, from disk after)
+        // ================================================================
+        get("/api/stream/:sessionId/timeseries", (req, res) -> {
+            res.type("application/json");
+            
+            String sessionId = req.params(":sessionId");
+            StreamSession live = registry.getById(sessionId);
+            if (live != null) {
+                return gson.toJson(live.getTimeSeriesJson());
+            }
+            
+            try {
+                String saved = new FileLogger().readTimeSeries(sessionId);
+                if (saved == null) {
+                    res.status(404);
+                    JsonObject error = new JsonObject();
+                    error.addProperty("error", "No time series for this session");
+                    return gson.toJson(error);
+                }
+                return saved; // stored as JSON already
+                
+            } catch (Exception e) {
+                // LO7: Exception Handling
+                res.status(500);
+                JsonObject error = new JsonObject();
+                error.addProperty("error", "Error reading time series: " + e.getMessage());
+                return gson.toJson(error);
+            }
+        });
+        
+        // ================================================================
+        // API: HLS Cache Stats (hit rate / disk reads)
+        // ================================================================
+        get("/api/hls", (req, res) -> {
+            res.type("application/json");
+            
+            JsonObject response = new JsonObject();
+            response.addProperty("root", hlsCache.getRoot().toString());
+            response.addProperty("watching", hlsCache.isWatching());
+            response.addProperty("maxBytes", HlsCache.MAX_BYTES);
+            response.addProperty("cachedBytes", hlsCache.getCachedBytes());
+            response.addProperty("cachedSegments", hlsCache.getCachedSegments());
+            response.addProperty("cachedPlaylists", hlsCache.getCachedPlaylists());
+            response.addProperty("hits", hlsCache.getHits());
+            response.addProperty("misses", hlsCache.getMisses());
+            response.addProperty("diskReads", hlsCache.getDiskReads());
+            response.addProperty("bytesServed", hlsCache.getBytesServed());
+            response.addProperty("playlistReloads", hlsCache.getPlaylistReloads());
+            response.addProperty("prefetched", hlsCache.getPrefetched());
+            response.addProperty("evictions", hlsCache.getEvictions());
+            response.addProperty("watchEvents", hlsCache.getWatchEvents());
+            
+            // Blocking reload vs. plain polling: how stale was the playlist when it reached the viewer?
+            JsonObject blocking = new JsonObject();
+            blocking.addProperty("requests", hlsCache.getBlockingRequests());
+            blocking.addProperty("immediate", hlsCache.getBlockingImmediate());
+            blocking.addProperty("held", hlsCache.getBlockingHeld());
+            blocking.addProperty("timeouts", hlsCache.getBlockingTimeouts());
+            blocking.addProperty("busy", hlsCache.getBlockingBusy());
+            blocking.addProperty("blockedNow", hlsCache.getBlockedNow());
+            blocking.addProperty("maxBlocked", HlsCache.MAX_BLOCKED_REQUESTS);
+            blocking.addProperty("avgHoldMs", Math.round(hlsCache.getAverageHoldMillis() * 10) / 10.0);
+            blocking.addProperty("avgDeliveryDelayMs", Math.round(hlsCache.getAverageBlockingDelayMillis() * 10) / 10.0);
+            blocking.addProperty("maxDeliveryDelayMs", hlsCache.getMaxBlockingDelayMillis());
+            response.add("blockingReload", blocking);
+            
+            JsonObject polled = new JsonObject();
+            polled.addProperty("requests", hlsCache.getPolledPlaylists());
+            polled.addProperty("avgDeliveryDelayMs", Math.round(hlsCache.getAveragePolledDelayMillis() * 10) / 10.0);
+            polled.addProperty("maxDeliveryDelayMs", hlsCache.getMaxPolledDelayMillis());
+            response.add("polledPlaylists", polled);
+            return gson.toJson(response);
+        });
+        
+        // ================================================================
+        // HLS: playlists and segments for viewers, from the edge cache
+        // ================================================================
+        get("/live/:key/:file", (req, res) -> {
+            String file = req.params(":file");
+            String msn = req.queryParams("_HLS_msn");
+            String part = req.queryParams("_HLS_part");
+            HlsCache.Entry entry;
+            if (msn == null && part == null) {
+                entry = hlsCache.get(req.params(":key"), file);
+            } else {
+                // Blocking playlist reload: answer once media sequence _HLS_msn is listed
+                // (there are no partial segments, so _HLS_part adds nothing to wait for)
+                res.type("application/json");
+                JsonObject error = new JsonObject();
+                long sequence;
+                try {
+                    if (msn == null || !file.endsWith(".m3u8")) {
+                        throw new IllegalArgumentException("_HLS_msn is required, and only on playlists");
+                    }
+                    sequence = Long.parseLong(msn);
+                    if (sequence < 0) {
+                        throw new IllegalArgumentException("_HLS_msn must not be negative");
+                    }
+                    entry = hlsCache.awaitPlaylist(req.params(":key"), file, sequence);
+                } catch (NumberFormatException e) {
+                    res.status(400);
+                    error.addProperty("error", "Invalid _HLS_msn: expected a number");
+                    return gson.toJson(error);
+                } catch (IllegalArgumentException e) {
+                    res.status(400);
+                    error.addProperty("error", e.getMessage());
+                    return gson.toJson(error);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    res.status(503);
+                    error.addProperty("error", "Server shutting down");
+                    return gson.toJson(error);
+                }
+                if (entry != null && !entry.canSatisfy(sequence)) {
+                    // Timed out or too many requests held - the player retries
+                    res.status(503);
+                    res.header("Retry-After", "1");
+                    error.addProperty("error", "Segment " + sequence + " not available yet");
+                    error.addProperty("lastSequence", entry.getLastSequence());
+                    return gson.toJson(error);
+                }
+            }
+            if (entry == null) {
+                res.status(404);
+                res.type("application/json");
+                JsonObject error = new JsonObject();
+                error.addProperty("error", "Not found");
+                return gson.toJson(error);
+            }
+            
+            res.type(HlsCache.contentType(file));
+            res.header("ETag", entry.getEtag());
+            // Live playlists change every segment; segment names can repeat after an ffmpeg restart
+            res.header("Cache-Control", file.endsWith(".m3u8") ? "no-cache" : "max-age=60");
+            if (entry.getEtag().equals(req.headers("If-None-Match"))) {
+                res.status(304);
+                return "";
+            }
+            res.raw().setContentLength(entry.getData().length);
+            return entry.getData();
+        });
+        
         // ================================================================
         // 404 Handler
         // ================================================================
@@ -375,12 +990,12 @@ public class Main {
         // Wait for server to fully start
         awaitInitialization();
         
-        System.out.println("✅ MetaStream Live Backend ready at http://localhost:8080");
-        System.out.println("🔌 WebSocket endpoint: ws://localhost:8080/ws");
-        System.out.println("📊 Health check: http://localhost:8080/api/health");
+        System.out.println("✅ MetaStream Live Backend ready at http://localhost:" + PORT);
+        System.out.println("🔌 WebSocket endpoint: ws://localhost:" + PORT + "/ws");
+        System.out.println("📊 Health check: http://localhost:" + PORT + "/api/health");
         
-        // Verify media server
-        if (MediaServerClient.isMediaServerHealthy()) {
+        // Verify media server (first probe, bounded wait)
+        if (MediaServerClient.checkNow(3000)) {
             System.out.println("✅ FFmpeg media server is running");
         } else {
             System.out.println("⚠️  FFmpeg media server not detected - start it before streaming");
@@ -388,10 +1003,93 @@ public class Main {
     }
     
     /**
-     * Accessor for WebSocketHandler to get active session
-     * @return Current active StreamSession or null
+     * Spark's get(), with the route timed in /api/metrics under its path pattern
+     */
+    private static void get(String path, Route route) {
+        Spark.get(path, new TimedRoute("GET", path, route));
+    }
+    
+    /**
+     * Spark's post(), with the route timed in /api/metrics under its path pattern
+     */
+    private static void post(String path, Route route) {
+        Spark.post(path, new TimedRoute("POST", path, route));
+    }
+    
+    /**
+     * Logback logger shared by every backend class (com.mts.*)
+     */
+    private static Logger backendLogger() {
+        return (Logger) LoggerFactory.getLogger("com.mts");
+    }
+    
+    /**
+     * History cursor: epoch millis or an ISO local date-time, 0 if absent
+     */
+    private static long parseFrom(String from) {
+        if (from == null || from.isBlank()) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(from.trim());
+        } catch (NumberFormatException e) {
+            try {
+                return SessionHistoryStore.toEpochMillis(LocalDateTime.parse(from.trim()));
+            } catch (DateTimeParseException ex) {
+                throw new IllegalArgumentException("Invalid 'from': expected epoch millis or ISO date-time");
+            }
+        }
+    }
+    
+    /**
+     * History page size, 20 by default and at most 500
+     */
+    private static int parseLimit(String limit) {
+        if (limit == null || limit.isBlank()) {
+            return 20;
+        }
+        try {
+            int value = Integer.parseInt(limit.trim());
+            if (value < 1) {
+                throw new IllegalArgumentException("Invalid 'limit': must be at least 1");
+            }
+            return Math.min(value, 500);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid 'limit': expected a number");
+        }
+    }
+    
+    /**
+     * Stream key from ?key= or a JSON body's "streamKey", default "stream"
+     */
+    private static String streamKeyParam(Request req) {
+        String rawBody = req.body(); // read before queryParams, which may consume a form-encoded body
+        String key = req.queryParams("key");
+        if (key == null && rawBody != null && !rawBody.isBlank()) {
+            try {
+                JsonObject body = gson.fromJson(rawBody, JsonObject.class);
+                if (body != null && body.has("streamKey") && !body.get("streamKey").isJsonNull()) {
+                    key = body.get("streamKey").getAsString().trim();
+                }
+            } catch (JsonSyntaxException | IllegalStateException | UnsupportedOperationException e) {
+                // not JSON - fall back to the default key
+            }
+        }
+        return key != null && !key.isEmpty() ? key : SessionRegistry.DEFAULT_STREAM_KEY;
+    }
+    
+    /**
+     * Registry of live sessions, shared with WebSocketHandler
+     */
+    public static SessionRegistry getSessionRegistry() {
+        return registry;
+    }
+    
+    /**
+     * Accessor for the default stream's session (single-stream callers)
+     * @return Current StreamSession on the "stream" key or null
      */
     public static StreamSession getActiveSession() {
-        return activeSession;
+        return registry.get(SessionRegistry.DEFAULT_STREAM_KEY);
     }
 }
\ No newline at end of file
@@ -1,77 +1,78 @@
 package com.mts;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.URI;
 import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 
 /**
  * LO7: Exception Handling - Try/catch for HTTP requests
+ * Health checks are served from MediaServerHealthMonitor's cached snapshot.
  */
 public class MediaServerClient {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MediaServerClient.class);
-    private static final String MEDIA_SERVER_URL = "http://localhost:8000";
-    private static final Gson gson = new Gson();
+    private static final String MEDIA_SERVER_URL = Config.getString("metastream.media.url", "http://localhost:8000");
     private static final HttpClient httpClient = HttpClient.newBuilder()
             .connectTimeout(Duration.ofSeconds(5))
             .build();
+    private static final MediaServerHealthMonitor monitor =
+            new MediaServerHealthMonitor(httpClient, URI.create(MEDIA_SERVER_URL + "/health"));
 
-    public static boolean isMediaServerHealthy() {
-        try {
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(MEDIA_SERVER_URL + "/health"))
-                    .timeout(Duration.ofSeconds(3))
-                    .GET()
-                    .build();
-
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-
-            if (response.statusCode() == 200) {
-                JsonObject health = gson.fromJson(response.body(), JsonObject.class);
-                String status = health.get("status").getAsString();
-                return "ok".equals(status);
-            }
-            return false;
+    static {
+        monitor.start();
+    }
 
-        } catch (Exception e) {
-            // LO7: Exception Handling
-            LOGGER.debug("Media server not reachable: {}", e.getMessage());
-            return false;
-        }
+    /**
+     * Answered from the background prober's snapshot - never blocks
+     */
+    public static boolean isMediaServerHealthy() {
+        return monitor.getSnapshot().isHealthy();
     }
 
+    /**
+     * Whether the media server reported an incoming stream on its last probe.
+     * The media server's /health reports one flag for all keys.
+     */
     public static boolean isStreamActive(String streamKey) {
-        try {
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(MEDIA_SERVER_URL + "/health"))
-                    .GET()
-                    .build();
-
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        return monitor.getSnapshot().isStreaming();
+    }
 
-            if (response.statusCode() == 200) {
-                JsonObject health = gson.fromJson(response.body(), JsonObject.class);
-                return health.has("streaming") && health.get("streaming").getAsBoolean();
-            }
-            return false;
+    /**
+     * Latest probe result (age, latency, circuit state)
+     */
+    public static MediaServerHealthMonitor.Snapshot getHealthSnapshot() {
+        return monitor.getSnapshot();
+    }
 
+    /**
+     * Probe immediately and wait at most timeoutMs for the answer (startup only)
+     */
+    public static boolean checkNow(long timeoutMs) {
+        try {
+            return monitor.probeNow().get(timeoutMs, TimeUnit.MILLISECONDS).isHealthy();
         } catch (Exception e) {
-            return false;
+            // LO7: Exception Handling
+            LOGGER.debug("Media server check did not finish: {}", e.getMessage());
+            return monitor.getSnapshot().isHealthy();
         }
     }
 
+    /**
+     * Playlist URL for viewers - served by the backend's HLS cache, not the media server
+     */
     public static String getHLSUrl(String streamKey) {
-        return String.format("%s/live/%s/index.m3u8", MEDIA_SERVER_URL, streamKey);
+        return String.format("http://localhost:%d/live/%s/index.m3u8", Main.PORT, streamKey);
     }
 
     public static String getRecommendedRTMPUrl() {
-        return "rtmp://localhost/live/stream";
+        return getRecommendedRTMPUrl(SessionRegistry.DEFAULT_STREAM_KEY);
+    }
+
+    public static String getRecommendedRTMPUrl(String streamKey) {
+        return "rtmp://localhost/live/" + streamKey;
     }
 }
@@ -0,0 +1,278 @@
+package com.mts;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+/**
+ * Probes the media server's /health in the background and publishes an
+ * immutable snapshot, so request threads answer health questions
+ * instantly instead of waiting on an HTTP round-trip.
+ *
+ * A circuit breaker stops hammering a dead server: after
+ * failureThreshold consecutive failures the circuit opens and probes
+ * pause for a cool-down (doubling up to maxOpenMs); then a single
+ * half-open probe decides whether to close it again.
+ *
+ * LO7: Exception Handling - probe failures only ever change the snapshot
+ */
+public class MediaServerHealthMonitor {
+
+    /**
+     * Circuit breaker state
+     */
+    public enum CircuitState {
+        CLOSED,     // probing normally
+        OPEN,       // server considered down, probes paused
+        HALF_OPEN   // one trial probe in flight
+    }
+
+    /**
+     * Result of the most recent completed probe
+     */
+    public static final class Snapshot {
+        private final boolean healthy;
+        private final boolean streaming;
+        private final long checkedAtMillis;
+        private final long latencyMillis;
+        private final CircuitState circuitState;
+        private final int consecutiveFailures;
+        private final String lastError;
+
+        Snapshot(boolean healthy, boolean streaming, long checkedAtMillis, long latencyMillis,
+                 CircuitState circuitState, int consecutiveFailures, String lastError) {
+            this.healthy = healthy;
+            this.streaming = streaming;
+            this.checkedAtMillis = checkedAtMillis;
+            this.latencyMillis = latencyMillis;
+            this.circuitState = circuitState;
+            this.consecutiveFailures = consecutiveFailures;
+            this.lastError = lastError;
+        }
+
+        public boolean isHealthy() {
+            return healthy;
+        }
+
+        public boolean isStreaming() {
+            return streaming;
+        }
+
+        /**
+         * When the last probe finished, 0 if none has yet
+         */
+        public long getCheckedAtMillis() {
+            return checkedAtMillis;
+        }
+
+        /**
+         * Milliseconds since the last probe finished, -1 if none has yet
+         */
+        public long getAgeMillis() {
+            return checkedAtMillis == 0 ? -1 : System.currentTimeMillis() - checkedAtMillis;
+        }
+
+        public long getLatencyMillis() {
+            return latencyMillis;
+        }
+
+        public CircuitState getCircuitState() {
+            return circuitState;
+        }
+
+        public int getConsecutiveFailures() {
+            return consecutiveFailures;
+        }
+
+        public String getLastError() {
+            return lastError;
+        }
+    }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MediaServerHealthMonitor.class);
+    private static final Gson gson = new Gson();
+
+    static final long PROBE_INTERVAL_MS = Math.max(100, Config.getLong("metastream.media.probeIntervalMs", 2000));
+    static final long PROBE_TIMEOUT_MS = Math.max(100, Config.getLong("metastream.media.probeTimeoutMs", 1500));
+    static final int FAILURE_THRESHOLD = Math.max(1, Config.getInt("metastream.media.failureThreshold", 3));
+    static final long OPEN_MS = Math.max(100, Config.getLong("metastream.media.openMs", 5000));
+    static final long MAX_OPEN_MS = Math.max(OPEN_MS, Config.getLong("metastream.media.maxOpenMs", 60000));
+
+    // /api/metrics: probe round trips by outcome, and ticks skipped while the circuit is open
+    private static final LatencyHistogram healthyProbeTime = Metrics.histogram("metastream_media_probe_seconds",
+            "Media server /health probe round trip", "outcome", "healthy");
+    private static final LatencyHistogram failedProbeTime = Metrics.histogram("metastream_media_probe_seconds",
+            "Media server /health probe round trip", "outcome", "failed");
+    private static final LongAdder skippedProbes = Metrics.counter("metastream_media_probes_skipped_total",
+            "Probe ticks skipped because the circuit was open");
+
+    private final HttpClient httpClient;
+    private final HttpRequest probeRequest;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "media-health-probe");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicReference<CompletableFuture<Snapshot>> inFlight = new AtomicReference<>(); // null when idle
+    private volatile Snapshot snapshot =
+            new Snapshot(false, false, 0, -1, CircuitState.CLOSED, 0, "Not checked yet");
+
+    // Breaker bookkeeping - written by the probe completion (one probe at a time), read by the timer
+    private volatile long openUntilNanos;
+    private volatile long openMs = OPEN_MS;
+
+    public MediaServerHealthMonitor(HttpClient httpClient, URI healthUri) {
+        this.httpClient = httpClient;
+        this.probeRequest = HttpRequest.newBuilder()
+                .uri(healthUri)
+                .timeout(Duration.ofMillis(PROBE_TIMEOUT_MS))
+                .GET()
+                .build();
+    }
+
+    public void start() {
+        timer.scheduleWithFixedDelay(this::tick, 0, PROBE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        timer.shutdownNow();
+    }
+
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Probe right away (ignoring an open circuit), e.g. once at startup.
+     * If a probe is already in flight - the timer's first tick races this
+     * at startup - waits for that one instead of starting another.
+     * @return completes with the resulting snapshot; never completes exceptionally
+     */
+    public CompletableFuture<Snapshot> probeNow() {
+        CompletableFuture<Snapshot> pending = new CompletableFuture<>();
+        while (true) {
+            CompletableFuture<Snapshot> running = inFlight.get();
+            if (running != null) {
+                return running.copy(); // one is already in flight
+            }
+            if (inFlight.compareAndSet(null, pending)) {
+                probe(pending);
+                return pending.copy();
+            }
+        }
+    }
+
+    private void tick() {
+        Snapshot current = snapshot;
+        CircuitState state = current.getCircuitState();
+        if (state == CircuitState.OPEN) {
+            if (System.nanoTime() - openUntilNanos < 0) {
+                skippedProbes.increment();
+                return; // still cooling down
+            }
+            state = CircuitState.HALF_OPEN;
+        }
+        CompletableFuture<Snapshot> pending = new CompletableFuture<>();
+        if (!inFlight.compareAndSet(null, pending)) {
+            return; // previous probe still running
+        }
+        if (state == CircuitState.HALF_OPEN) {
+            publish(new Snapshot(current.isHealthy(), current.isStreaming(), current.getCheckedAtMillis(),
+                    current.getLatencyMillis(), CircuitState.HALF_OPEN, current.getConsecutiveFailures(),
+                    current.getLastError()));
+        }
+        probe(pending);
+    }
+
+    /**
+     * Run one probe; the caller has installed pending as the in-flight probe,
+     * and it completes with the new snapshot
+     */
+    private void probe(CompletableFuture<Snapshot> pending) {
+        long start = System.nanoTime();
+        httpClient.sendAsync(probeRequest, HttpResponse.BodyHandlers.ofString())
+                .handle((response, error) -> {
+                    try {
+                        long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                        if (error != null) {
+                            onFailure(latency, describe(error));
+                        } else {
+                            onResponse(response, latency);
+                        }
+                    } catch (RuntimeException e) {
+                        onFailure(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), describe(e));
+                    } finally {
+                        (snapshot.isHealthy() ? healthyProbeTime : failedProbeTime).recordSince(start);
+                        inFlight.set(null);
+                        pending.complete(snapshot);
+                    }
+                    return null;
+                });
+    }
+
+    private void onResponse(HttpResponse<String> response, long latency) {
+        if (response.statusCode() != 200) {
+            onFailure(latency, "HTTP " + response.statusCode());
+            return;
+        }
+        JsonObject health = gson.fromJson(response.body(), JsonObject.class);
+        if (health == null || !health.has("status") || !"ok".equals(health.get("status").getAsString())) {
+            onFailure(latency, "Status not ok");
+            return;
+        }
+        boolean streaming = health.has("streaming") && health.get("streaming").getAsBoolean();
+
+        Snapshot previous = snapshot;
+        if (previous.getCircuitState() != CircuitState.CLOSED || !previous.isHealthy()) {
+            LOGGER.info("✅ Media server healthy ({} ms)", latency);
+        }
+        openMs = OPEN_MS;
+        publish(new Snapshot(true, streaming, System.currentTimeMillis(), latency, CircuitState.CLOSED, 0, null));
+    }
+
+    private void onFailure(long latency, String reason) {
+        Snapshot previous = snapshot;
+        int failures = previous.getConsecutiveFailures() + 1;
+        CircuitState state = CircuitState.CLOSED;
+
+        if (previous.getCircuitState() == CircuitState.HALF_OPEN) {
+            openMs = Math.min(openMs * 2, MAX_OPEN_MS); // trial failed - back off further
+            state = CircuitState.OPEN;
+        } else if (failures >= FAILURE_THRESHOLD) {
+            state = CircuitState.OPEN;
+        }
+        if (state == CircuitState.OPEN) {
+            openUntilNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(openMs);
+            if (previous.getCircuitState() != CircuitState.OPEN) {
+                LOGGER.warn("⚠️ Media server unreachable ({}), pausing probes for {} ms", reason, openMs);
+            }
+        } else {
+            LOGGER.debug("Media server probe failed: {}", reason);
+        }
+        publish(new Snapshot(false, false, System.currentTimeMillis(), latency, state, failures, reason));
+    }
+
+    private void publish(Snapshot next) {
+        snapshot = next;
+    }
+
+    private static String describe(Throwable error) {
+        Throwable cause = error.getCause() != null ? error.getCause() : error;
+        String message = cause.getMessage();
+        return cause.getClass().getSimpleName() + (message != null ? ": " + message : "");
+    }
+}
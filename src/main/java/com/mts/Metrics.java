@@ -0,0 +1,178 @@
+package com.mts;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Process-wide registry of histograms, counters and gauges, published by
+ * /api/metrics in the Prometheus text format.
+ *
+ * Metrics are registered once (class initialisation or route setup) and
+ * the caller keeps the returned object, so recording never looks anything
+ * up. Labels are given as name/value pairs and rendered once, at
+ * registration.
+ *
+ * LO5: Generic Collections - families and their series keep registration order
+ */
+public final class Metrics {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private enum Type {
+        COUNTER("counter"),
+        GAUGE("gauge"),
+        HISTOGRAM("histogram");
+
+        final String text;
+
+        Type(String text) {
+            this.text = text;
+        }
+    }
+
+    /**
+     * All series sharing a metric name
+     */
+    private static final class Family {
+        final String name;
+        final String help;
+        final Type type;
+        final Map<String, Object> series = new LinkedHashMap<>(); // rendered labels -> metric
+
+        Family(String name, String help, Type type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    private static final Map<String, Family> families = new LinkedHashMap<>(); // guarded by itself
+
+    private Metrics() {
+    }
+
+    /**
+     * @param labels name/value pairs, e.g. "route", "/api/health"
+     */
+    public static LatencyHistogram histogram(String name, String help, String... labels) {
+        return (LatencyHistogram) register(name, help, Type.HISTOGRAM, labels, new LatencyHistogram());
+    }
+
+    /**
+     * @param labels name/value pairs
+     */
+    public static LongAdder counter(String name, String help, String... labels) {
+        return (LongAdder) register(name, help, Type.COUNTER, labels, new LongAdder());
+    }
+
+    /**
+     * A value read when metrics are scraped
+     * @param labels name/value pairs
+     */
+    public static void gauge(String name, String help, LongSupplier value, String... labels) {
+        register(name, help, Type.GAUGE, labels, value);
+    }
+
+    /**
+     * Returns the metric already registered under the same name and labels, if any
+     * @throws IllegalArgumentException if the name is taken by another type
+     */
+    private static Object register(String name, String help, Type type, String[] labels, Object metric) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name/value pairs: " + name);
+        }
+        synchronized (families) {
+            Family family = families.computeIfAbsent(name, key -> new Family(name, help, type));
+            if (family.type != type) {
+                throw new IllegalArgumentException(name + " is already registered as a " + family.type.text);
+            }
+            return family.series.computeIfAbsent(renderLabels(labels), key -> metric);
+        }
+    }
+
+    /**
+     * Every registered metric in the Prometheus text exposition format
+     */
+    public static String scrape() {
+        StringBuilder out = new StringBuilder(16 * 1024);
+        synchronized (families) {
+            for (Family family : families.values()) {
+                out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+                out.append("# TYPE ").append(family.name).append(' ').append(family.type.text).append('\n');
+                for (Map.Entry<String, Object> series : family.series.entrySet()) {
+                    writeSeries(out, family, series.getKey(), series.getValue());
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    private static void writeSeries(StringBuilder out, Family family, String labels, Object metric) {
+        switch (family.type) {
+            case COUNTER:
+                sample(out, family.name, labels, null, ((LongAdder) metric).sum());
+                break;
+            case GAUGE:
+                sample(out, family.name, labels, null, ((LongSupplier) metric).getAsLong());
+                break;
+            default:
+                LatencyHistogram histogram = (LatencyHistogram) metric;
+                long[] counts = histogram.getBucketCounts();
+                long cumulative = 0;
+                String bucket = family.name + "_bucket";
+                for (int i = 0; i < LatencyHistogram.BOUNDS_SECONDS.length; i++) {
+                    cumulative += counts[i];
+                    sample(out, bucket, labels, LatencyHistogram.BOUNDS_SECONDS[i], cumulative);
+                }
+                cumulative += counts[counts.length - 1];
+                sample(out, bucket, labels, "+Inf", cumulative);
+                out.append(family.name).append("_sum");
+                appendLabels(out, labels, null);
+                out.append(' ').append(histogram.getSumNanos() / 1e9).append('\n');
+                sample(out, family.name + "_count", labels, null, cumulative);
+                break;
+        }
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, String le, long value) {
+        out.append(name);
+        appendLabels(out, labels, le);
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static void appendLabels(StringBuilder out, String labels, String le) {
+        if (labels.isEmpty() && le == null) {
+            return;
+        }
+        out.append('{').append(labels);
+        if (le != null) {
+            out.append(labels.isEmpty() ? "" : ",").append("le=\"").append(le).append('"');
+        }
+        out.append('}');
+    }
+
+    private static String renderLabels(String[] labels) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append(labels[i]).append("=\"");
+            String value = labels[i + 1];
+            for (int c = 0; c < value.length(); c++) {
+                char ch = value.charAt(c);
+                if (ch == '\\' || ch == '"') {
+                    out.append('\\').append(ch);
+                } else if (ch == '\n') {
+                    out.append("\\n");
+                } else {
+                    out.append(ch);
+                }
+            }
+            out.append('"');
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,228 @@
+package com.mts;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Asynchronous front for a NotificationService.
+ * sendNotification only queues the message and returns; a small bounded
+ * pool delivers it through the wrapped service, retrying failures with
+ * exponential backoff. The same message sent again within the coalescing
+ * window is dropped, and a full queue sheds new messages rather than
+ * blocking the caller.
+ *
+ * LO4: Polymorphism - a NotificationService that wraps another one
+ * LO7: Exception Handling - delivery failures are retried, then counted
+ */
+public class NotificationDispatcher implements NotificationService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NotificationDispatcher.class);
+
+    static final int WORKERS = Math.max(1, Config.getInt("metastream.notify.workers", 2));
+    static final int QUEUE_CAPACITY = Math.max(1, Config.getInt("metastream.notify.queueCapacity", 1024));
+    static final long COALESCE_MS = Math.max(0, Config.getLong("metastream.notify.coalesceMs", 10000));
+    static final int MAX_ATTEMPTS = Math.max(1, Config.getInt("metastream.notify.maxAttempts", 4));
+    static final long RETRY_BASE_MS = Math.max(1, Config.getLong("metastream.notify.retryBaseMs", 500));
+
+    // Retries wait here rather than occupying a delivery thread
+    private static final ScheduledExecutorService retryTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "notify-retry");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * One queued message and its delivery attempts so far
+     */
+    private final class Delivery implements Runnable {
+        final String message;
+        final long enqueuedNanos = System.nanoTime();
+        int attempt;
+
+        Delivery(String message) {
+            this.message = message;
+        }
+
+        @Override
+        public void run() {
+            attempt++;
+            try {
+                delegate.sendNotification(message);
+                long latency = System.nanoTime() - enqueuedNanos;
+                delivered.increment();
+                lastLatencyNanos.set(latency);
+                totalLatencyNanos.addAndGet(latency);
+                maxLatencyNanos.accumulateAndGet(latency, Math::max);
+            } catch (RuntimeException e) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    failed.increment();
+                    LOGGER.warn("❌ {} gave up after {} attempts: {}", name, attempt, e.getMessage());
+                    return;
+                }
+                long delay = RETRY_BASE_MS << (attempt - 1);
+                retried.increment();
+                pendingRetries.incrementAndGet();
+                LOGGER.debug("{} attempt {} failed ({}), retrying in {} ms", name, attempt, e.getMessage(), delay);
+                retryTimer.schedule(this::resubmit, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void resubmit() {
+            pendingRetries.decrementAndGet();
+            submit(this);
+        }
+    }
+
+    private final NotificationService delegate;
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, Long> recent = new ConcurrentHashMap<>(); // message -> last accepted (nanos)
+    private final AtomicInteger pendingRetries = new AtomicInteger();
+
+    // Metrics
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final AtomicLong lastLatencyNanos = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    public NotificationDispatcher(NotificationService delegate) {
+        this.delegate = delegate;
+        this.name = delegate.getClass().getSimpleName();
+        this.executor = new ThreadPoolExecutor(WORKERS, WORKERS, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), r -> {
+                    Thread t = new Thread(r, "notify-" + name);
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queue a notification. Never blocks and never throws.
+     */
+    @Override
+    public void sendNotification(String message) {
+        submitted.increment();
+        if (isDuplicate(message)) {
+            coalesced.increment();
+            LOGGER.debug("{} coalesced duplicate: {}", name, message);
+            return;
+        }
+        submit(new Delivery(message));
+    }
+
+    private void submit(Delivery delivery) {
+        try {
+            executor.execute(delivery);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            LOGGER.warn("⚠️ {} queue full, dropped: {}", name, delivery.message);
+        }
+    }
+
+    /**
+     * True if the same text was accepted within the coalescing window
+     */
+    private boolean isDuplicate(String message) {
+        if (COALESCE_MS == 0) {
+            return false;
+        }
+        long now = System.nanoTime();
+        long window = TimeUnit.MILLISECONDS.toNanos(COALESCE_MS);
+        boolean[] duplicate = new boolean[1];
+        recent.compute(message, (key, last) -> {
+            if (last != null && now - last < window) {
+                duplicate[0] = true;
+                return last;
+            }
+            return now;
+        });
+        if (!duplicate[0] && recent.size() > QUEUE_CAPACITY) {
+            purgeExpired(now, window);
+        }
+        return duplicate[0];
+    }
+
+    private void purgeExpired(long now, long window) {
+        Iterator<Map.Entry<String, Long>> it = recent.entrySet().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().getValue() >= window) {
+                it.remove();
+            }
+        }
+    }
+
+    // Metrics getters
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Messages waiting for a delivery thread or for their next retry
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size() + pendingRetries.get();
+    }
+
+    public int getActiveDeliveries() {
+        return executor.getActiveCount();
+    }
+
+    public long getSubmitted() {
+        return submitted.sum();
+    }
+
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getDelivered() {
+        return delivered.sum();
+    }
+
+    public long getRetried() {
+        return retried.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /**
+     * Queue-to-delivered time of the most recent notification, retries included
+     */
+    public long getLastLatencyMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(lastLatencyNanos.get());
+    }
+
+    public long getAverageLatencyMicros() {
+        long count = delivered.sum();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalLatencyNanos.get() / count);
+    }
+
+    public long getMaxLatencyMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxLatencyNanos.get());
+    }
+}
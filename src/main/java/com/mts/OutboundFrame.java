@@ -0,0 +1,211 @@
+package com.mts;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.common.WebSocketRemoteEndpoint;
+import org.eclipse.jetty.websocket.common.frames.BinaryFrame;
+import org.eclipse.jetty.websocket.common.frames.DataFrame;
+import org.eclipse.jetty.websocket.common.frames.TextFrame;
+
+/**
+ * An outgoing message encoded exactly once.
+ * The same frame is handed to every recipient; each send only wraps a
+ * read-only view of the shared payload, so fan-out cost per viewer is a
+ * couple of small objects instead of a fresh byte[] per viewer.
+ * JSON frames built by ChatWireCodec also carry their binary-protocol
+ * twin, which is what binary clients are sent instead.
+ *
+ * LO1: Encapsulation - the payload can never be modified after construction
+ */
+public final class OutboundFrame {
+
+    private static final byte[] BATCH_PREFIX = "{\"type\":\"batch\",\"items\":[".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] BATCH_SUFFIX = "]}".getBytes(StandardCharsets.UTF_8);
+
+    private volatile String text;
+    private final ByteBuffer payload;
+    private final int messageCount;
+    private final long createdNanos;
+    private final boolean binary;
+    private volatile OutboundFrame compact;           // binary twin of a JSON frame, built on first use if absent
+    private final ChatWireCodec.Author author;        // author id a binary chat frame refers to, or null
+    private volatile OutboundFrame introduced;        // this binary frame preceded by the author's AUTHOR message
+
+    private OutboundFrame(String text, ByteBuffer payload, int messageCount, boolean binary,
+                          OutboundFrame compact, ChatWireCodec.Author author) {
+        this(text, payload, messageCount, binary, compact, author, System.nanoTime());
+    }
+
+    /**
+     * @param createdNanos when the (oldest) message carried was encoded
+     */
+    private OutboundFrame(String text, ByteBuffer payload, int messageCount, boolean binary,
+                          OutboundFrame compact, ChatWireCodec.Author author, long createdNanos) {
+        this.text = text;
+        this.payload = payload.asReadOnlyBuffer();
+        this.messageCount = messageCount;
+        this.createdNanos = createdNanos;
+        this.binary = binary;
+        this.compact = compact;
+        this.author = author;
+    }
+
+    /**
+     * Encode a JSON message once for broadcasting
+     */
+    public static OutboundFrame of(String text) {
+        return of(text, null);
+    }
+
+    /**
+     * A JSON message and its binary-protocol form
+     */
+    static OutboundFrame of(String text, OutboundFrame compact) {
+        return new OutboundFrame(text, ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)), 1, false, compact, null);
+    }
+
+    /**
+     * A binary-protocol message
+     * @param author the author the message refers to by id, or null
+     */
+    static OutboundFrame binary(ByteBuffer payload, ChatWireCodec.Author author) {
+        return new OutboundFrame(null, payload, 1, true, null, author);
+    }
+
+    /**
+     * The frame a binary-protocol client gets in place of this one: the
+     * binary twin, prefixed with the author's name if the client has not had it
+     * @param known authors already sent to the client (updated here)
+     */
+    OutboundFrame forBinaryClient(ChatWireCodec.KnownAuthors known) {
+        OutboundFrame frame = this;
+        if (!binary) {
+            frame = compact;
+            if (frame == null) {
+                frame = ChatWireCodec.wrapJson(this);
+                compact = frame;
+            }
+        }
+        if (frame.author == null || !known.learn(frame.author.id)) {
+            return frame;
+        }
+        OutboundFrame withAuthor = frame.introduced;
+        if (withAuthor == null) {
+            byte[] definition = frame.author.definition;
+            ByteBuffer combined = ByteBuffer.allocate(definition.length + frame.getPayloadLength());
+            combined.put(definition).put(frame.payloadView()).flip();
+            withAuthor = new OutboundFrame(null, combined, 1, true, null, null, frame.createdNanos);
+            frame.introduced = withAuthor;
+        }
+        return withAuthor;
+    }
+
+    /**
+     * Combine already-encoded JSON messages into one {"type":"batch","items":[...]} frame,
+     * or binary messages into one binary frame (they are simply concatenated).
+     * The item payloads are copied byte-for-byte, nothing is re-serialised.
+     */
+    public static OutboundFrame batch(List<OutboundFrame> items) {
+        if (items.get(0).binary) {
+            return binaryBatch(items);
+        }
+        int size = BATCH_PREFIX.length + BATCH_SUFFIX.length + Math.max(0, items.size() - 1);
+        int messages = 0;
+        for (OutboundFrame item : items) {
+            size += item.getPayloadLength();
+            messages += item.messageCount;
+        }
+
+        ByteBuffer combined = ByteBuffer.allocate(size);
+        combined.put(BATCH_PREFIX);
+        for (int i = 0; i < items.size(); i++) {
+            if (i > 0) {
+                combined.put((byte) ',');
+            }
+            combined.put(items.get(i).payloadView());
+        }
+        combined.put(BATCH_SUFFIX);
+        combined.flip();
+
+        return new OutboundFrame(null, combined, messages, false, null, null, items.get(0).createdNanos);
+    }
+
+    private static OutboundFrame binaryBatch(List<OutboundFrame> items) {
+        int size = 0;
+        int messages = 0;
+        for (OutboundFrame item : items) {
+            size += item.getPayloadLength();
+            messages += item.messageCount;
+        }
+        ByteBuffer combined = ByteBuffer.allocate(size);
+        for (OutboundFrame item : items) {
+            combined.put(item.payloadView());
+        }
+        combined.flip();
+        return new OutboundFrame(null, combined, messages, true, null, null, items.get(0).createdNanos);
+    }
+
+    /**
+     * Send this frame to one recipient without re-encoding it.
+     * Falls back to sendString for endpoints that are not Jetty's own.
+     */
+    public void sendTo(RemoteEndpoint remote, WriteCallback callback) {
+        if (remote instanceof WebSocketRemoteEndpoint) {
+            DataFrame frame = binary ? new BinaryFrame() : new TextFrame();
+            frame.setPayload(payloadView());
+            ((WebSocketRemoteEndpoint) remote).uncheckedSendFrame(frame, callback);
+        } else if (binary) {
+            remote.sendBytes(payloadView(), callback);
+        } else {
+            remote.sendString(getText(), callback);
+        }
+    }
+
+    /**
+     * Independent read-only view (own position/limit) over the shared bytes
+     */
+    public ByteBuffer payloadView() {
+        return payload.duplicate();
+    }
+
+    /**
+     * The JSON text (null for binary frames)
+     */
+    public String getText() {
+        if (binary) {
+            return null;
+        }
+        String decoded = text;
+        if (decoded == null) {
+            decoded = StandardCharsets.UTF_8.decode(payloadView()).toString();
+            text = decoded;
+        }
+        return decoded;
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    public int getPayloadLength() {
+        return payload.remaining();
+    }
+
+    /**
+     * Number of chat/system messages carried (more than 1 for batch frames)
+     */
+    public int getMessageCount() {
+        return messageCount;
+    }
+
+    /**
+     * System.nanoTime() when the message was encoded (the oldest one, for a batch)
+     */
+    public long getCreatedNanos() {
+        return createdNanos;
+    }
+}
@@ -0,0 +1,115 @@
+package com.mts;
+
+import java.lang.management.ManagementFactory;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
+import spark.embeddedserver.jetty.JettyServerFactory;
+
+/**
+ * Chooses how the embedded Jetty runs routes and WebSocket callbacks:
+ * metastream.threads=CLASSIC (Spark's default pooled platform threads)
+ * or VIRTUAL (one virtual thread per task, Java 21+). VIRTUAL falls back
+ * to CLASSIC when the runtime has no virtual threads.
+ * Either way the Jetty server is built here, so /ws can be given our own
+ * WebSocket compression before it starts (see WebSocketCompression).
+ */
+public final class ServerThreads {
+
+    /**
+     * Execution mode for request and WebSocket work
+     */
+    public enum Mode {
+        CLASSIC,
+        VIRTUAL
+    }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServerThreads.class);
+
+    static final Mode REQUESTED_MODE = Config.getEnum("metastream.threads", Mode.class, Mode.CLASSIC);
+
+    private static volatile Mode mode = Mode.CLASSIC;
+    private static volatile VirtualThreadPool virtualPool;
+
+    private ServerThreads() {
+    }
+
+    /**
+     * Install the requested mode. Must run before the first Spark route/port call.
+     * @return the mode actually in effect
+     */
+    public static Mode configure() {
+        EmbeddedJettyFactory jetty = new EmbeddedJettyFactory(new ServerFactory());
+        mode = Mode.CLASSIC;
+        if (REQUESTED_MODE == Mode.VIRTUAL) {
+            VirtualThreadPool pool = VirtualThreadPool.create();
+            if (pool != null) {
+                jetty.withThreadPool(pool);
+                virtualPool = pool;
+                mode = Mode.VIRTUAL;
+                LOGGER.info("🧵 Routes and WebSocket callbacks run on virtual threads");
+            } else {
+                LOGGER.warn("⚠️ Virtual threads need Java 21+ (running {}), using the classic thread pool",
+                            Runtime.version().feature());
+            }
+        }
+        EmbeddedServers.add(EmbeddedServers.Identifiers.JETTY, jetty);
+        return mode;
+    }
+
+    /**
+     * Spark's own server construction, plus our WebSocket compression
+     */
+    private static final class ServerFactory implements JettyServerFactory {
+
+        @Override
+        public Server create(int maxThreads, int minThreads, int threadTimeoutMillis) {
+            Server server;
+            if (maxThreads > 0) {
+                server = new Server(new QueuedThreadPool(maxThreads,
+                        minThreads > 0 ? minThreads : 8,
+                        threadTimeoutMillis > 0 ? threadTimeoutMillis : 60000));
+            } else {
+                server = new Server();
+            }
+            WebSocketCompression.install(server);
+            return server;
+        }
+
+        @Override
+        public Server create(ThreadPool threadPool) {
+            Server server = threadPool != null ? new Server(threadPool) : new Server();
+            WebSocketCompression.install(server);
+            return server;
+        }
+    }
+
+    public static Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Tasks on virtual threads right now, -1 in CLASSIC mode
+     */
+    public static int getVirtualThreadTasks() {
+        VirtualThreadPool pool = virtualPool;
+        return pool != null ? pool.getThreads() : -1;
+    }
+
+    /**
+     * Live platform threads in the JVM (virtual threads are not counted)
+     */
+    public static int getPlatformThreadCount() {
+        return ManagementFactory.getThreadMXBean().getThreadCount();
+    }
+
+    public static int getPeakPlatformThreadCount() {
+        return ManagementFactory.getThreadMXBean().getPeakThreadCount();
+    }
+}
@@ -0,0 +1,433 @@
+package com.mts;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+/**
+ * Segmented, indexed store of finished stream sessions.
+ * Records are JSON lines appended to segment-NNNNN.jsonl files; every
+ * segment has a sidecar segment-NNNNN.idx of fixed binary entries
+ * (start time, offset, length, sessionId). On startup only the sidecars
+ * are read, and lookups by sessionId or start time go through in-memory
+ * indexes straight to a positional read of one record.
+ * Pages of the time index are chained by an opaque cursor naming the last
+ * record returned (start time and sessionId), so sessions that share a
+ * millisecond are neither repeated nor skipped across pages.
+ *
+ * LO8: File I/O - binary and text files, random access reads
+ * LO7: Exception Handling - damaged index tails are rebuilt from the segment
+ */
+public class SessionHistoryStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SessionHistoryStore.class);
+    private static final Gson gson = new Gson();
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.jsonl");
+
+    static final String HISTORY_DIR = Config.getString("metastream.history.dir", "session_history");
+    static final int SEGMENT_MAX_RECORDS = Math.max(1, Config.getInt("metastream.history.segmentRecords", 10000));
+
+    private static volatile SessionHistoryStore instance;
+
+    /**
+     * Where one record lives on disk
+     */
+    private static final class Location {
+        final int segment;
+        final long offset;
+        final int length;
+        final long startMillis;
+        final String sessionId;
+
+        Location(int segment, long offset, int length, long startMillis, String sessionId) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.startMillis = startMillis;
+            this.sessionId = sessionId;
+        }
+    }
+
+    /**
+     * Orders the time index by start time, then sessionId (sessions can share a millisecond)
+     */
+    private static final Comparator<Location> BY_START =
+            Comparator.<Location>comparingLong(l -> l.startMillis).thenComparing(l -> l.sessionId);
+
+    private final Path directory;
+    private final int segmentMaxRecords;
+    private final Map<String, Location> byId = new ConcurrentHashMap<>();
+    private final NavigableMap<Location, Location> byStart = new ConcurrentSkipListMap<>(BY_START);
+    private final Map<Integer, FileChannel> readers = new ConcurrentHashMap<>();
+
+    // Active segment - only touched under the append lock
+    private int activeSegment;
+    private int activeRecords;
+    private FileChannel activeData;
+    private DataOutputStream activeIndex;
+
+    public SessionHistoryStore(Path directory, int segmentMaxRecords) throws IOException {
+        this.directory = directory;
+        this.segmentMaxRecords = segmentMaxRecords;
+        Files.createDirectories(directory);
+        loadIndexes();
+    }
+
+    public static SessionHistoryStore getInstance() throws IOException {
+        SessionHistoryStore store = instance;
+        if (store == null) {
+            synchronized (SessionHistoryStore.class) {
+                store = instance;
+                if (store == null) {
+                    store = new SessionHistoryStore(Paths.get(HISTORY_DIR), SEGMENT_MAX_RECORDS);
+                    instance = store;
+                }
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Append a finished session and index it
+     */
+    public synchronized void append(StreamSession session) throws IOException {
+        if (session == null || session.getStartTime() == null) {
+            throw new IllegalArgumentException("Session has not been started");
+        }
+        if (activeRecords >= segmentMaxRecords) {
+            openSegment(activeSegment + 1); // roll over to a fresh segment
+            activeRecords = 0;
+        } else if (activeData == null) {
+            openSegment(activeSegment);
+        }
+
+        byte[] line = (gson.toJson(toRecord(session)) + "\n").getBytes(StandardCharsets.UTF_8);
+        long offset = activeData.size();
+        ByteBuffer buffer = ByteBuffer.wrap(line);
+        while (buffer.hasRemaining()) {
+            activeData.write(buffer);
+        }
+
+        long startMillis = toEpochMillis(session.getStartTime());
+        // Data first, sidecar second: a crash in between leaves a tail we can rebuild
+        writeIndexEntry(activeIndex, startMillis, offset, line.length, session.getSessionId());
+        activeIndex.flush();
+
+        index(new Location(activeSegment, offset, line.length, startMillis, session.getSessionId()));
+        activeRecords++;
+    }
+
+    /**
+     * Raw JSON record for one session, or null if unknown
+     */
+    public String find(String sessionId) throws IOException {
+        Location location = byId.get(sessionId);
+        return location == null ? null : read(location);
+    }
+
+    /**
+     * One page of the time index
+     */
+    public static final class Page {
+        private final List<String> records;
+        private final String next;
+
+        Page(List<String> records, String next) {
+            this.records = records;
+            this.next = next;
+        }
+
+        /**
+         * Raw JSON records, oldest first
+         */
+        public List<String> getRecords() {
+            return records;
+        }
+
+        /**
+         * Cursor for the following page (see historyAfter), or null if this is the last
+         */
+        public String getNext() {
+            return next;
+        }
+    }
+
+    /**
+     * Up to limit records whose start time is at or after fromMillis, oldest first
+     */
+    public Page history(long fromMillis, int limit) throws IOException {
+        return page(byStart.tailMap(new Location(0, 0, 0, fromMillis, ""), true), limit);
+    }
+
+    /**
+     * Up to limit records after the one a previous page's cursor names, oldest first
+     * @throws IllegalArgumentException if the cursor was not made by this store
+     */
+    public Page historyAfter(String cursor, int limit) throws IOException {
+        return page(byStart.tailMap(decodeCursor(cursor), false), limit);
+    }
+
+    private Page page(NavigableMap<Location, Location> tail, int limit) throws IOException {
+        List<String> records = new ArrayList<>(Math.min(limit, 64));
+        Location last = null;
+        for (Location location : tail.keySet()) {
+            if (records.size() >= limit) {
+                return new Page(records, encodeCursor(last)); // there is more
+            }
+            records.add(read(location));
+            last = location;
+        }
+        return new Page(records, null);
+    }
+
+    /**
+     * "startMillis:sessionId", URL-safe base64 so it can go straight into a query string
+     */
+    private static String encodeCursor(Location location) {
+        String key = location.startMillis + ":" + location.sessionId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Location decodeCursor(String cursor) {
+        try {
+            String key = new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8);
+            int colon = key.indexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("missing sessionId");
+            }
+            return new Location(0, 0, 0, Long.parseLong(key.substring(0, colon)), key.substring(colon + 1));
+        } catch (IllegalArgumentException e) { // bad base64 and NumberFormatException too
+            throw new IllegalArgumentException("Invalid 'after': not a cursor from a previous page");
+        }
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    private String read(Location location) throws IOException {
+        FileChannel channel = readers.computeIfAbsent(location.segment, this::openReader);
+        ByteBuffer buffer = ByteBuffer.allocate(location.length);
+        long position = location.offset;
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new EOFException("Truncated record in segment " + location.segment);
+            }
+            position += n;
+        }
+        buffer.flip();
+        return StandardCharsets.UTF_8.decode(buffer).toString().trim();
+    }
+
+    private FileChannel openReader(int segment) {
+        try {
+            return FileChannel.open(dataPath(segment), StandardOpenOption.READ);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open segment " + segment + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static JsonObject toRecord(StreamSession session) {
+        JsonObject record = new JsonObject();
+        record.addProperty("sessionId", session.getSessionId());
+        record.addProperty("streamKey", session.getStreamKey());
+        record.addProperty("username", session.getUser().getUsername());
+        record.addProperty("startTime", session.getStartTime().toString());
+        record.addProperty("startEpochMillis", toEpochMillis(session.getStartTime()));
+        if (session.getEndTime() != null) {
+            record.addProperty("endTime", session.getEndTime().toString());
+            record.addProperty("endEpochMillis", toEpochMillis(session.getEndTime()));
+        }
+        record.addProperty("duration", session.getDuration());
+        record.addProperty("totalMessages", session.getTotalMessages());
+        record.addProperty("peakViewerCount", session.getPeakViewerCount());
+        return record;
+    }
+
+    static long toEpochMillis(java.time.LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    // ------------------------------------------------------------------
+    // Segment and sidecar management
+    // ------------------------------------------------------------------
+
+    private void openSegment(int segment) throws IOException {
+        closeActive();
+        activeSegment = segment;
+        activeData = FileChannel.open(dataPath(segment), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        activeIndex = new DataOutputStream(Files.newOutputStream(indexPath(segment),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+        LOGGER.info("📁 Session history segment {} opened", segment);
+    }
+
+    private void closeActive() throws IOException {
+        if (activeData != null) {
+            activeData.close();
+            activeIndex.close();
+            activeData = null;
+            activeIndex = null;
+        }
+    }
+
+    /**
+     * Read every sidecar; rebuild the part of a segment its sidecar does not cover
+     */
+    private void loadIndexes() throws IOException {
+        int lastSegment = 0;
+        int lastSegmentRecords = 0;
+
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(directory, "segment-*.jsonl")) {
+            for (Path data : segments) {
+                Matcher matcher = SEGMENT_NAME.matcher(data.getFileName().toString());
+                if (!matcher.matches()) {
+                    continue;
+                }
+                int segment = Integer.parseInt(matcher.group(1));
+                int records = loadSegment(segment);
+                if (segment > lastSegment) {
+                    lastSegment = segment;
+                    lastSegmentRecords = records;
+                }
+            }
+        }
+
+        // Continue appending to the newest segment if it still has room
+        activeSegment = Math.max(1, lastSegment);
+        activeRecords = lastSegment == 0 ? 0 : lastSegmentRecords;
+        LOGGER.info("📚 Session history loaded: {} sessions from {}", byId.size(), directory);
+    }
+
+    private int loadSegment(int segment) throws IOException {
+        long covered = 0;
+        int records = 0;
+        Path indexFile = indexPath(segment);
+
+        if (Files.exists(indexFile)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+                while (true) {
+                    long startMillis = in.readLong();
+                    long offset = in.readLong();
+                    int length = in.readInt();
+                    byte[] id = new byte[in.readUnsignedByte()];
+                    in.readFully(id);
+                    index(new Location(segment, offset, length, startMillis, new String(id, StandardCharsets.UTF_8)));
+                    covered = Math.max(covered, offset + length);
+                    records++;
+                }
+            } catch (EOFException e) {
+                // end of sidecar (a torn last entry is simply dropped and rebuilt below)
+            }
+        }
+
+        long dataSize = Files.size(dataPath(segment));
+        if (covered < dataSize) {
+            records += rebuildTail(segment, covered);
+        }
+        return records;
+    }
+
+    /**
+     * Scan the unindexed tail of a segment and re-create its sidecar entries
+     */
+    private int rebuildTail(int segment, long from) throws IOException {
+        LOGGER.warn("⚠️ Rebuilding index for segment {} from offset {}", segment, from);
+        int rebuilt = 0;
+
+        // Rewrite the sidecar so it ends exactly at the last good entry
+        List<Location> existing = new ArrayList<>();
+        for (Location location : byId.values()) {
+            if (location.segment == segment) {
+                existing.add(location);
+            }
+        }
+        existing.sort(Comparator.comparingLong(l -> l.offset));
+
+        try (FileChannel data = FileChannel.open(dataPath(segment), StandardOpenOption.READ);
+             DataOutputStream index = new DataOutputStream(Files.newOutputStream(indexPath(segment)))) {
+            for (Location location : existing) {
+                writeIndexEntry(index, location.startMillis, location.offset, location.length, location.sessionId);
+            }
+
+            data.position(from);
+            InputStream in = new BufferedInputStream(Channels.newInputStream(data));
+            java.io.ByteArrayOutputStream line = new java.io.ByteArrayOutputStream(512);
+            long offset = from;
+            int b;
+            while ((b = in.read()) != -1) {
+                line.write(b);
+                if (b != '\n') {
+                    continue;
+                }
+                byte[] bytes = line.toByteArray();
+                line.reset();
+                try {
+                    JsonObject record = gson.fromJson(new String(bytes, StandardCharsets.UTF_8), JsonObject.class);
+                    String sessionId = record.get("sessionId").getAsString();
+                    long startMillis = record.get("startEpochMillis").getAsLong();
+                    writeIndexEntry(index, startMillis, offset, bytes.length, sessionId);
+                    index(new Location(segment, offset, bytes.length, startMillis, sessionId));
+                    rebuilt++;
+                } catch (RuntimeException e) {
+                    LOGGER.warn("⚠️ Skipping unreadable record at segment {} offset {}", segment, offset);
+                }
+                offset += bytes.length;
+            }
+        }
+        return rebuilt;
+    }
+
+    private static void writeIndexEntry(DataOutputStream out, long startMillis, long offset,
+                                        int length, String sessionId) throws IOException {
+        byte[] id = sessionId.getBytes(StandardCharsets.UTF_8);
+        out.writeLong(startMillis);
+        out.writeLong(offset);
+        out.writeInt(length);
+        out.writeByte(id.length);
+        out.write(id);
+    }
+
+    private void index(Location location) {
+        byId.put(location.sessionId, location);
+        byStart.put(location, location);
+    }
+
+    private Path dataPath(int segment) {
+        return directory.resolve(String.format("segment-%05d.jsonl", segment));
+    }
+
+    private Path indexPath(int segment) {
+        return directory.resolve(String.format("segment-%05d.idx", segment));
+    }
+}
@@ -0,0 +1,48 @@
+package com.mts;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Once a second, closes the sampling interval of every live session
+ * (messages/sec). Runs on its own daemon thread so readers of the stats
+ * endpoints only ever see finished values and chat threads do no extra work.
+ */
+public class SessionMetricsSampler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SessionMetricsSampler.class);
+
+    private final SessionRegistry registry;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "session-metrics");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public SessionMetricsSampler(SessionRegistry registry) {
+        this.registry = registry;
+    }
+
+    public void start() {
+        timer.scheduleAtFixedRate(this::sample, 1, 1, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        timer.shutdownNow();
+    }
+
+    private void sample() {
+        try {
+            for (StreamSession session : registry.getActiveSessions()) {
+                session.sampleSecond();
+            }
+        } catch (RuntimeException e) {
+            // never let one bad tick cancel the schedule
+            LOGGER.warn("⚠️ Session metrics sample failed: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.mts;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Thread-safe registry of live stream sessions.
+ * Each stream key (the RTMP/HLS path segment) can have at most one active
+ * session; different keys stream side by side. Sessions are indexed by
+ * key and by sessionId, and the last finished session per key is kept
+ * for the summary page.
+ *
+ * LO2: Arrays - concurrent maps as indexes
+ */
+public class SessionRegistry {
+
+    public static final String DEFAULT_STREAM_KEY = "stream";
+
+    // Keys end up in URLs and media-server paths
+    private static final Pattern KEY_PATTERN = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    private final Map<String, StreamSession> activeByKey = new ConcurrentHashMap<>();
+    private final Map<String, StreamSession> activeById = new ConcurrentHashMap<>();
+    private final Map<String, StreamSession> lastByKey = new ConcurrentHashMap<>();
+    private volatile StreamSession lastSession;
+
+    public static boolean isValidKey(String streamKey) {
+        return streamKey != null && KEY_PATTERN.matcher(streamKey).matches();
+    }
+
+    /**
+     * Register a started session under its stream key
+     * @return null on success, or the session already active on that key
+     */
+    public StreamSession register(StreamSession session) {
+        StreamSession existing = activeByKey.putIfAbsent(session.getStreamKey(), session);
+        if (existing != null) {
+            return existing;
+        }
+        activeById.put(session.getSessionId(), session);
+        return null;
+    }
+
+    /**
+     * Remove the active session of a key and remember it as that key's last session
+     * @return the removed session, or null if the key was idle
+     */
+    public StreamSession unregister(String streamKey) {
+        StreamSession session = activeByKey.remove(streamKey);
+        if (session != null) {
+            activeById.remove(session.getSessionId());
+            lastByKey.put(streamKey, session);
+            lastSession = session;
+        }
+        return session;
+    }
+
+    public StreamSession get(String streamKey) {
+        return streamKey == null ? null : activeByKey.get(streamKey);
+    }
+
+    public StreamSession getById(String sessionId) {
+        return sessionId == null ? null : activeById.get(sessionId);
+    }
+
+    /**
+     * Most recently finished session of a key
+     */
+    public StreamSession getLast(String streamKey) {
+        return lastByKey.get(streamKey);
+    }
+
+    /**
+     * Most recently finished session of any key
+     */
+    public StreamSession getLast() {
+        return lastSession;
+    }
+
+    public Collection<StreamSession> getActiveSessions() {
+        return activeByKey.values();
+    }
+
+    public int getActiveCount() {
+        return activeByKey.size();
+    }
+
+    /**
+     * Forget one key entirely (emergency recovery)
+     */
+    public void clear(String streamKey) {
+        StreamSession session = activeByKey.remove(streamKey);
+        if (session != null) {
+            activeById.remove(session.getSessionId());
+        }
+        StreamSession last = lastByKey.remove(streamKey);
+        if (last != null && last == lastSession) {
+            lastSession = null;
+        }
+    }
+
+    /**
+     * Forget everything (emergency recovery)
+     */
+    public void clear() {
+        activeByKey.clear();
+        activeById.clear();
+        lastByKey.clear();
+        lastSession = null;
+    }
+}
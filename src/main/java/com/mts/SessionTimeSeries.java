@@ -0,0 +1,135 @@
+package com.mts;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * Per-second history of one stream: concurrent viewers and chat messages.
+ *
+ * Points live in two fixed int arrays sized once per session. When they
+ * fill up, neighbouring points are merged in place and every point from
+ * then on covers twice as many seconds, so a 12-hour stream takes the same
+ * memory as a 1-minute one and still spans the whole session. Merging keeps
+ * the peak viewer count and the message total of each pair, so nothing that
+ * the summary page shows is averaged away.
+ *
+ * Written once a second by the sampler thread; readers take a copy. A
+ * sample only touches the arrays, nothing is allocated per point.
+ *
+ * LO1: OOP Principles - Encapsulation of the sample buffers
+ */
+public class SessionTimeSeries {
+
+    static final int DEFAULT_POINTS = 3600;
+    static final int MAX_POINTS = evenAtLeastTwo(Config.getInt("metastream.session.timeseriesPoints", DEFAULT_POINTS));
+
+    private final int[] viewers;   // peak concurrent viewers per point
+    private final int[] messages;  // chat messages per point
+    private int points;            // filled points
+    private int resolution = 1;    // seconds per point, doubles on every merge
+
+    // The point being filled
+    private int pendingViewers;
+    private int pendingMessages;
+    private int pendingSeconds;
+
+    public SessionTimeSeries() {
+        this(MAX_POINTS);
+    }
+
+    SessionTimeSeries(int capacity) {
+        int size = evenAtLeastTwo(capacity);
+        this.viewers = new int[size];
+        this.messages = new int[size];
+    }
+
+    /**
+     * Record one second of the session
+     */
+    public synchronized void addSecond(int viewerCount, long messageCount) {
+        pendingViewers = Math.max(pendingViewers, viewerCount);
+        pendingMessages = (int) Math.min(Integer.MAX_VALUE, (long) pendingMessages + messageCount);
+        if (++pendingSeconds < resolution) {
+            return;
+        }
+        viewers[points] = pendingViewers;
+        messages[points] = pendingMessages;
+        pendingViewers = 0;
+        pendingMessages = 0;
+        pendingSeconds = 0;
+        if (++points == viewers.length) {
+            downsample();
+        }
+    }
+
+    /**
+     * Halve the number of points by merging neighbours, doubling the resolution
+     */
+    private void downsample() {
+        int half = points / 2;
+        for (int i = 0; i < half; i++) {
+            int a = 2 * i;
+            viewers[i] = Math.max(viewers[a], viewers[a + 1]);
+            messages[i] = (int) Math.min(Integer.MAX_VALUE, (long) messages[a] + messages[a + 1]);
+        }
+        points = half;
+        resolution *= 2;
+    }
+
+    public synchronized int getResolutionSeconds() {
+        return resolution;
+    }
+
+    /**
+     * Filled points plus the one being filled, if any
+     */
+    public synchronized int size() {
+        return points + (pendingSeconds > 0 ? 1 : 0);
+    }
+
+    /**
+     * Bytes held by the sample arrays (the same for the whole session)
+     */
+    public int getRetainedBytes() {
+        return (viewers.length + messages.length) * Integer.BYTES;
+    }
+
+    /**
+     * Snapshot for the API and the file written when the stream stops.
+     * The last point may cover fewer seconds than the rest (lastPointSeconds).
+     */
+    public synchronized JsonObject toJson() {
+        JsonArray viewerPoints = new JsonArray();
+        JsonArray messagePoints = new JsonArray();
+        JsonArray ratePoints = new JsonArray();
+        for (int i = 0; i < points; i++) {
+            viewerPoints.add(viewers[i]);
+            messagePoints.add(messages[i]);
+            ratePoints.add(rate(messages[i], resolution));
+        }
+        int lastPointSeconds = resolution;
+        if (pendingSeconds > 0) {
+            viewerPoints.add(pendingViewers);
+            messagePoints.add(pendingMessages);
+            ratePoints.add(rate(pendingMessages, pendingSeconds));
+            lastPointSeconds = pendingSeconds;
+        }
+
+        JsonObject json = new JsonObject();
+        json.addProperty("resolutionSeconds", resolution);
+        json.addProperty("lastPointSeconds", lastPointSeconds);
+        json.addProperty("points", viewerPoints.size());
+        json.add("viewers", viewerPoints);
+        json.add("messages", messagePoints);
+        json.add("messagesPerSecond", ratePoints);
+        return json;
+    }
+
+    private static double rate(int count, int seconds) {
+        return Math.round(count * 100.0 / seconds) / 100.0;
+    }
+
+    private static int evenAtLeastTwo(int value) {
+        return Math.max(2, value & ~1);
+    }
+}
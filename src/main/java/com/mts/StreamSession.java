@@ -3,25 +3,41 @@ package com.mts;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.gson.JsonObject;
 
 /**
  * LO1: OOP Principles - Encapsulation
  * LO3: Aggregation - Contains a User object
+ *
+ * Live counters are updated from many Jetty threads at once, so they use
+ * LongAdder / AtomicInteger (CAS peak) rather than locks.
  */
 public class StreamSession {
     private String sessionId;
+    private final String streamKey; // RTMP/HLS key and chat room name
     private User user; // LO3: Aggregation
     private LocalDateTime startTime;
     private LocalDateTime endTime;
-    private int totalMessages;
-    private int peakViewerCount;
+    private final LongAdder totalMessages = new LongAdder();
+    private final AtomicInteger viewerCount = new AtomicInteger();
+    private final AtomicInteger peakViewerCount = new AtomicInteger();
+    private long lastSampledMessages; // sampler thread only
+    private volatile long messagesPerSecond;
     private boolean isActive;
+    private final ChatHistory chatHistory = new ChatHistory(); // recent chat for late joiners
+    private final SessionTimeSeries timeSeries = new SessionTimeSeries(); // viewers and chat per second
 
     public StreamSession(User user) {
+        this(user, SessionRegistry.DEFAULT_STREAM_KEY);
+    }
+
+    public StreamSession(User user, String streamKey) {
         this.sessionId = UUID.randomUUID().toString();
+        this.streamKey = streamKey;
         this.user = user;
-        this.totalMessages = 0;
-        this.peakViewerCount = 0;
         this.isActive = false;
     }
 
@@ -46,6 +62,10 @@ public class StreamSession {
         return sessionId; 
     }
     
+    public String getStreamKey() {
+        return streamKey;
+    }
+    
     public User getUser() { 
         return user; 
     }
@@ -62,6 +82,30 @@ public class StreamSession {
         return isActive;
     }
     
+    public ChatHistory getChatHistory() {
+        return chatHistory;
+    }
+    
+    public SessionTimeSeries getTimeSeries() {
+        return timeSeries;
+    }
+    
+    /**
+     * Time series with the session it belongs to, as served and written to disk
+     */
+    public JsonObject getTimeSeriesJson() {
+        JsonObject json = timeSeries.toJson();
+        json.addProperty("sessionId", sessionId);
+        json.addProperty("streamKey", streamKey);
+        if (startTime != null) {
+            json.addProperty("startEpochMillis", SessionHistoryStore.toEpochMillis(startTime));
+        }
+        if (endTime != null) {
+            json.addProperty("endEpochMillis", SessionHistoryStore.toEpochMillis(endTime));
+        }
+        return json;
+    }
+    
     /**
      * Get formatted duration string
      */
@@ -76,20 +120,65 @@ public class StreamSession {
     }
 
     public int getTotalMessages() { 
-        return totalMessages; 
+        return (int) totalMessages.sum(); 
     }
     
     public void incrementMessages() { 
-        this.totalMessages++; 
+        totalMessages.increment(); 
+    }
+    
+    public int getViewerCount() {
+        return viewerCount.get();
+    }
+    
+    /**
+     * A viewer joined this stream's room
+     */
+    public void viewerJoined() {
+        setPeakViewerCount(viewerCount.incrementAndGet());
+    }
+    
+    /**
+     * A viewer left this stream's room (never drops below zero)
+     */
+    public void viewerLeft() {
+        viewerCount.updateAndGet(count -> count > 0 ? count - 1 : 0);
+    }
+    
+    /**
+     * Viewers already in the room when the stream started
+     */
+    public void setViewerCount(int count) {
+        viewerCount.set(count);
+        setPeakViewerCount(count);
     }
     
     public int getPeakViewerCount() { 
-        return peakViewerCount; 
+        return peakViewerCount.get(); 
     }
     
     public void setPeakViewerCount(int count) {
-        if (count > this.peakViewerCount) {
-            this.peakViewerCount = count;
+        int peak = peakViewerCount.get();
+        while (count > peak && !peakViewerCount.compareAndSet(peak, count)) {
+            peak = peakViewerCount.get();
         }
     }
+    
+    /**
+     * Chat messages in the last full second (updated by SessionMetricsSampler)
+     */
+    public long getMessagesPerSecond() {
+        return messagesPerSecond;
+    }
+    
+    /**
+     * Close one one-second sampling interval. Called only by the sampler thread.
+     */
+    void sampleSecond() {
+        long total = totalMessages.sum();
+        long perSecond = total - lastSampledMessages;
+        messagesPerSecond = perSecond;
+        lastSampledMessages = total;
+        timeSeries.addSecond(viewerCount.get(), perSecond);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,48 @@
+package com.mts;
+
+/**
+ * A token bucket split into independent stripes so that many senders
+ * rarely compare-and-set the same counter. Each caller starts at its own
+ * stripe and moves on to the others only when that one is empty, so the
+ * combined rate and capacity still hold across all callers.
+ *
+ * LO2: Arrays - one bucket per stripe
+ */
+public final class StripedTokenBucket {
+
+    private final TokenBucket[] stripes;
+
+    /**
+     * @param perSecond total tokens added per second, shared out between stripes
+     * @param capacity  total tokens available at once
+     * @param stripes   number of stripes (>= 1)
+     */
+    public StripedTokenBucket(double perSecond, int capacity, int stripes) {
+        int count = Math.max(1, Math.min(stripes, capacity));
+        this.stripes = new TokenBucket[count];
+        for (int i = 0; i < count; i++) {
+            // Spread capacity exactly: the first (capacity % count) stripes get one extra token
+            int share = capacity / count + (i < capacity % count ? 1 : 0);
+            this.stripes[i] = new TokenBucket(perSecond / count, share);
+        }
+    }
+
+    /**
+     * Take one token, trying the caller's home stripe first
+     * @param hint any stable per-caller number (e.g. an identity hash)
+     */
+    public boolean tryAcquire(int hint) {
+        long now = System.nanoTime();
+        int home = Math.floorMod(hint, stripes.length);
+        for (int i = 0; i < stripes.length; i++) {
+            int index = home + i;
+            if (index >= stripes.length) {
+                index -= stripes.length;
+            }
+            if (stripes[index].tryAcquire(now)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,337 @@
+package com.mts;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * LO4: Inheritance & Polymorphism - Implements ChatBus as a full TCP mesh
+ *
+ * Every node listens on metastream.cluster.port and dials each address in
+ * metastream.cluster.peers, so each ordered pair of nodes has one TCP
+ * connection that carries messages one way. TCP keeps each origin's
+ * messages in order.
+ *
+ * Each peer has a bounded send queue (oldest dropped when full) drained by
+ * its own thread, so a slow or dead peer never holds up chat. Messages
+ * queued while a peer is down are sent when it comes back, and those
+ * written in the last few seconds before a connection broke are written
+ * again, since TCP cannot say whether they arrived; the receiver drops
+ * the repeats by id.
+ *
+ * LO7: Exception Handling - broken connections are redialled with backoff
+ */
+public class TcpMeshChatBus implements ChatBus {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TcpMeshChatBus.class);
+
+    static final int QUEUE_CAPACITY = Math.max(1, Config.getInt("metastream.cluster.queueCapacity", 4096));
+    static final int RESEND_COUNT = Math.max(0, Config.getInt("metastream.cluster.resendCount", 256));
+    private static final int MAGIC = 0x4D534231; // "MSB1"
+    private static final int CONNECT_TIMEOUT_MS = 2000;
+    private static final long MAX_BACKOFF_MS = 5000;
+    private static final long RESEND_WINDOW_MS = 5000; // well past anything a broken connection could have buffered
+    private static final int MAX_WRITE_BATCH = 64;
+
+    private final String nodeId;
+    private final int port;
+    private final List<Link> links = new CopyOnWriteArrayList<>();
+    private final Set<Socket> inbound = ConcurrentHashMap.newKeySet();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder resent = new LongAdder();
+
+    private volatile boolean running;
+    private volatile ServerSocket server;
+    private volatile Receiver receiver;
+
+    /**
+     * @param port to accept peers on, 0 to only dial out
+     * @param peers addresses of the other nodes
+     */
+    public TcpMeshChatBus(String nodeId, int port, List<InetSocketAddress> peers) {
+        this.nodeId = nodeId;
+        this.port = port;
+        for (InetSocketAddress peer : peers) {
+            links.add(new Link(peer));
+        }
+    }
+
+    @Override
+    public void start(Receiver receiver) {
+        this.receiver = receiver;
+        running = true;
+        if (port > 0) {
+            try {
+                ServerSocket socket = new ServerSocket();
+                socket.setReuseAddress(true);
+                socket.bind(new InetSocketAddress(port));
+                server = socket;
+                daemon(this::acceptLoop, "chat-bus-accept").start();
+                LOGGER.info("🔗 Chat bus listening on port {} as node {}", port, nodeId);
+            } catch (IOException e) {
+                LOGGER.warn("⚠️ Chat bus cannot listen on port {}: {} (sending only)", port, e.getMessage());
+            }
+        }
+        for (Link link : links) {
+            daemon(link, "chat-bus-out-" + link.address.getHostString() + ":" + link.address.getPort()).start();
+        }
+    }
+
+    @Override
+    public void publish(ClusterMessage message) {
+        for (Link link : links) {
+            link.offer(message);
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        closeQuietly(server);
+        for (Socket socket : inbound) {
+            closeQuietly(socket);
+        }
+        for (Link link : links) {
+            link.close();
+        }
+    }
+
+    // ================================================================
+    // Inbound: one reader thread per connected peer
+    // ================================================================
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                inbound.add(socket);
+                daemon(() -> read(socket), "chat-bus-in-" + socket.getRemoteSocketAddress()).start();
+            } catch (IOException e) {
+                if (running) {
+                    LOGGER.warn("⚠️ Chat bus accept failed: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void read(Socket socket) {
+        String peer = String.valueOf(socket.getRemoteSocketAddress());
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            if (in.readInt() != MAGIC) {
+                LOGGER.warn("⚠️ Chat bus: {} is not a MetaStream node, closing", peer);
+                return;
+            }
+            String remoteNode = in.readUTF();
+            LOGGER.info("🔗 Chat bus: node {} connected from {}", remoteNode, peer);
+            while (running) {
+                receiver.receive(ClusterMessage.readFrom(in));
+            }
+        } catch (EOFException | SocketException e) {
+            LOGGER.debug("Chat bus connection from {} closed: {}", peer, e.getMessage());
+        } catch (IOException e) {
+            LOGGER.warn("⚠️ Chat bus read from {} failed: {}", peer, e.getMessage());
+        } catch (RuntimeException e) {
+            LOGGER.error("❌ Chat bus delivery failed for {}: {}", peer, e.getMessage(), e);
+        } finally {
+            inbound.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    // ================================================================
+    // Outbound: one queue and writer thread per configured peer
+    // ================================================================
+
+    private final class Link implements Runnable {
+        final InetSocketAddress address;
+        final BlockingQueue<ClusterMessage> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        final ArrayDeque<Written> recent = new ArrayDeque<>(); // writer thread only
+        volatile boolean connected;
+        volatile Socket socket;
+        long brokenAtMillis; // writer thread only
+
+        Link(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        void offer(ClusterMessage message) {
+            while (!queue.offer(message)) {
+                if (queue.poll() != null) {
+                    dropped.increment();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            long backoff = 250;
+            while (running) {
+                try (Socket s = new Socket()) {
+                    socket = s;
+                    // Resolve on every attempt, the peer may not have been resolvable at startup
+                    s.connect(new InetSocketAddress(address.getHostString(), address.getPort()), CONNECT_TIMEOUT_MS);
+                    s.setTcpNoDelay(true);
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+                    out.writeInt(MAGIC);
+                    out.writeUTF(nodeId);
+                    for (Written written : recent) {
+                        if (written.atMillis >= brokenAtMillis - RESEND_WINDOW_MS) {
+                            written.message.writeTo(out);
+                            resent.increment();
+                        }
+                    }
+                    out.flush();
+                    connected = true;
+                    backoff = 250;
+                    LOGGER.info("🔗 Chat bus: connected to peer {}", address);
+                    drain(out);
+                } catch (IOException e) {
+                    if (connected) {
+                        brokenAtMillis = System.currentTimeMillis();
+                        LOGGER.warn("⚠️ Chat bus: lost peer {}: {}", address, e.getMessage());
+                    } else {
+                        LOGGER.debug("Chat bus: peer {} unreachable: {}", address, e.getMessage());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } finally {
+                    connected = false;
+                    socket = null;
+                }
+                if (running) {
+                    try {
+                        Thread.sleep(backoff);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+                }
+            }
+        }
+
+        /**
+         * Write queued messages, flushing once per run of up to MAX_WRITE_BATCH
+         */
+        private void drain(DataOutputStream out) throws IOException, InterruptedException {
+            while (running) {
+                ClusterMessage message = queue.poll(1, TimeUnit.SECONDS);
+                if (message == null) {
+                    continue;
+                }
+                int written = 0;
+                do {
+                    remember(message);
+                    message.writeTo(out);
+                    sent.increment();
+                } while (++written < MAX_WRITE_BATCH && (message = queue.poll()) != null);
+                out.flush();
+            }
+        }
+
+        private void remember(ClusterMessage message) {
+            if (RESEND_COUNT == 0) {
+                return;
+            }
+            if (recent.size() == RESEND_COUNT) {
+                recent.pollFirst();
+            }
+            recent.addLast(new Written(message, System.currentTimeMillis()));
+        }
+
+        void close() {
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * A message and when it was written to a peer
+     */
+    private static final class Written {
+        final ClusterMessage message;
+        final long atMillis;
+
+        Written(ClusterMessage message, long atMillis) {
+            this.message = message;
+            this.atMillis = atMillis;
+        }
+    }
+
+    private static Thread daemon(Runnable task, String name) {
+        Thread t = new Thread(task, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // closing anyway
+            }
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "tcp:" + port;
+    }
+
+    @Override
+    public int getConnectedPeers() {
+        int connected = 0;
+        for (Link link : links) {
+            if (link.connected) {
+                connected++;
+            }
+        }
+        return connected;
+    }
+
+    public int getInboundConnections() {
+        return inbound.size();
+    }
+
+    public int getConfiguredPeers() {
+        return links.size();
+    }
+
+    @Override
+    public long getSent() {
+        return sent.sum();
+    }
+
+    @Override
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Messages written again after a reconnect (most are dropped by the peer as duplicates)
+     */
+    public long getResent() {
+        return resent.sum();
+    }
+}
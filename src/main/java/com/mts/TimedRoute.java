@@ -0,0 +1,64 @@
+package com.mts;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import spark.HaltException;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+/**
+ * LO4: Inheritance & Polymorphism - A Spark Route that times another one
+ *
+ * Records how long the handler ran and counts responses by status class
+ * (2xx, 4xx, ...) under the route's path pattern, so /api/stream/:sessionId
+ * is one series however many sessions are looked up.
+ */
+public final class TimedRoute implements Route {
+
+    private final Route route;
+    private final String method;
+    private final String path;
+    private final LatencyHistogram duration;
+    private final AtomicReferenceArray<LongAdder> responses = new AtomicReferenceArray<>(6); // by status / 100
+
+    public TimedRoute(String method, String path, Route route) {
+        this.route = route;
+        this.method = method;
+        this.path = path;
+        this.duration = Metrics.histogram("metastream_http_request_duration_seconds",
+                "Time spent in the route handler", "method", method, "route", path);
+    }
+
+    @Override
+    public Object handle(Request request, Response response) throws Exception {
+        long start = System.nanoTime();
+        int status = 500;
+        try {
+            Object body = route.handle(request, response);
+            status = response.status();
+            return body;
+        } catch (HaltException e) {
+            status = e.statusCode();
+            throw e;
+        } finally {
+            duration.recordSince(start);
+            responses(status).increment();
+        }
+    }
+
+    /**
+     * The counter for a status class, registered the first time the class is seen
+     */
+    private LongAdder responses(int status) {
+        int index = Math.min(Math.max(status / 100, 0), 5);
+        LongAdder counter = responses.get(index);
+        if (counter == null) {
+            counter = Metrics.counter("metastream_http_requests_total", "Requests handled by route and status class",
+                    "method", method, "route", path, "status", index == 0 ? "other" : index + "xx");
+            responses.set(index, counter);
+        }
+        return counter;
+    }
+}
@@ -0,0 +1,47 @@
+package com.mts;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket: refills at a fixed rate up to capacity tokens.
+ * Kept as a single "theoretical arrival time" (the GCRA form of a token
+ * bucket): taking a token is one compare-and-set, with no refill timer
+ * and nothing to lock.
+ */
+public final class TokenBucket {
+
+    private final long intervalNanos;   // time to earn one token
+    private final long toleranceNanos;  // how far ahead of the clock the bucket may run (capacity - 1 tokens)
+    private final AtomicLong arrival;   // when the bucket would be empty at the current rate
+
+    /**
+     * @param perSecond tokens added per second (> 0)
+     * @param capacity  tokens available at once (>= 1)
+     */
+    public TokenBucket(double perSecond, int capacity) {
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / perSecond));
+        this.toleranceNanos = (Math.max(1, capacity) - 1) * intervalNanos;
+        this.arrival = new AtomicLong(System.nanoTime() - toleranceNanos - intervalNanos); // starts full
+    }
+
+    /**
+     * Take one token if one is available; never blocks
+     */
+    public boolean tryAcquire() {
+        return tryAcquire(System.nanoTime());
+    }
+
+    boolean tryAcquire(long now) {
+        while (true) {
+            long current = arrival.get();
+            long start = current - now < 0 ? now : current; // a bucket never holds more than capacity
+            if (start - now > toleranceNanos) {
+                return false;
+            }
+            if (arrival.compareAndSet(current, start + intervalNanos)) {
+                return true;
+            }
+        }
+    }
+}
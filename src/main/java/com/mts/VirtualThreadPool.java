@@ -0,0 +1,112 @@
+package com.mts;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.eclipse.jetty.util.thread.TryExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Jetty ThreadPool that runs every task on its own virtual thread (Java 21+).
+ * Jetty hands HTTP requests, WebSocket callbacks and selector work to its
+ * server thread pool, so installing this one moves Spark routes and
+ * WebSocketHandler onto virtual threads; blocking calls then park a cheap
+ * virtual thread instead of pinning a pooled platform thread.
+ *
+ * The build targets Java 17, so the virtual-thread executor is looked up
+ * reflectively; {@link #create()} returns null on older runtimes.
+ */
+public class VirtualThreadPool extends ContainerLifeCycle implements ThreadPool, TryExecutor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreadPool.class);
+
+    private final ExecutorService executor;
+    private final AtomicInteger running = new AtomicInteger();
+
+    private VirtualThreadPool(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @return a pool backed by Executors.newVirtualThreadPerTaskExecutor(), or null if unavailable
+     */
+    public static VirtualThreadPool create() {
+        try {
+            Object executor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            return new VirtualThreadPool((ExecutorService) executor);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.debug("Virtual threads unavailable: {}", e.toString());
+            return null;
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        running.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    running.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            running.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Starting a virtual thread never has to wait for a free worker
+     */
+    @Override
+    public boolean tryExecute(Runnable task) {
+        try {
+            execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void join() throws InterruptedException {
+        while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+            // keep waiting until stopped
+        }
+    }
+
+    /**
+     * Tasks currently running (one virtual thread each)
+     */
+    @Override
+    public int getThreads() {
+        return running.get();
+    }
+
+    @Override
+    public int getIdleThreads() {
+        return 0; // threads are created per task, never parked in a pool
+    }
+
+    @Override
+    public boolean isLowOnThreads() {
+        return false;
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        executor.shutdown();
+        if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+            executor.shutdownNow();
+        }
+        super.doStop();
+    }
+}
@@ -0,0 +1,565 @@
+package com.mts;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.util.component.LifeCycle;
+import org.eclipse.jetty.websocket.api.BadPayloadException;
+import org.eclipse.jetty.websocket.api.BatchMode;
+import org.eclipse.jetty.websocket.api.MessageTooLargeException;
+import org.eclipse.jetty.websocket.api.ProtocolException;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.api.extensions.Extension;
+import org.eclipse.jetty.websocket.api.extensions.ExtensionConfig;
+import org.eclipse.jetty.websocket.api.extensions.Frame;
+import org.eclipse.jetty.websocket.api.extensions.OutgoingFrames;
+import org.eclipse.jetty.websocket.common.OpCode;
+import org.eclipse.jetty.websocket.common.WebSocketSession;
+import org.eclipse.jetty.websocket.common.extensions.AbstractExtension;
+import org.eclipse.jetty.websocket.common.extensions.ExtensionStack;
+import org.eclipse.jetty.websocket.common.extensions.WebSocketExtensionFactory;
+import org.eclipse.jetty.websocket.common.frames.DataFrame;
+import org.eclipse.jetty.websocket.server.NativeWebSocketConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * permessage-deflate (RFC 7692) for /ws, in place of Jetty's built-in
+ * extension, which compresses every frame and keeps no accounts.
+ *
+ * Messages smaller than minBytes go out uncompressed (a per-message choice
+ * the RFC allows), so viewer counts and short binary chat frames don't pay
+ * for zlib. With context takeover each connection keeps its own deflater
+ * and inflater, and later messages compress against earlier ones - the
+ * best ratio, for roughly 300 KB of native memory per viewer. Without it,
+ * both sides start every message fresh and the server borrows its zlib
+ * streams from a small shared pool, so idle viewers hold nothing.
+ *
+ * Ratio, zlib time and the memory held by connections and the pool are
+ * published on /api/chat/connections.
+ *
+ * LO7: Exception Handling - corrupt or oversized compressed input closes the connection
+ */
+public final class WebSocketCompression {
+
+    static final String NAME = "permessage-deflate";
+
+    static final boolean ENABLED = Config.getBoolean("metastream.ws.deflate.enabled", true);
+    static final int MIN_BYTES = Math.max(0, Config.getInt("metastream.ws.deflate.minBytes", 128));
+    static final boolean CONTEXT_TAKEOVER = Config.getBoolean("metastream.ws.deflate.contextTakeover", true);
+    static final int LEVEL = Math.max(1, Math.min(9, Config.getInt("metastream.ws.deflate.level", 6)));
+
+    // Native memory behind one zlib stream (windowBits 15, memLevel 8, as java.util.zip always uses)
+    static final int DEFLATER_BYTES = (1 << 17) + (1 << 17) + 6 * 1024;
+    static final int INFLATER_BYTES = (1 << 15) + 7 * 1024;
+
+    private static final int POOL_SIZE = 2 * Runtime.getRuntime().availableProcessors();
+    private static final byte[] TAIL = {0x00, 0x00, (byte) 0xFF, (byte) 0xFF};
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WebSocketCompression.class);
+
+    // Without context takeover zlib streams are borrowed per message
+    private static final BlockingQueue<Deflater> idleDeflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final BlockingQueue<Inflater> idleInflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    // Metrics
+    private static final LongAdder negotiated = new LongAdder();
+    private static final AtomicInteger active = new AtomicInteger();
+    private static final AtomicLong retainedBytes = new AtomicLong();
+    private static final LongAdder compressedMessages = new LongAdder();
+    private static final LongAdder compressedRawBytes = new LongAdder();
+    private static final LongAdder compressedWireBytes = new LongAdder();
+    private static final LongAdder skippedMessages = new LongAdder();
+    private static final LongAdder skippedBytes = new LongAdder();
+    private static final LongAdder notSmaller = new LongAdder();
+    private static final LongAdder deflateNanos = new LongAdder();
+    private static final LongAdder inflatedMessages = new LongAdder();
+    private static final LongAdder inflatedWireBytes = new LongAdder();
+    private static final LongAdder inflatedRawBytes = new LongAdder();
+    private static final LongAdder inflateNanos = new LongAdder();
+
+    private WebSocketCompression() {
+    }
+
+    /**
+     * Swap Jetty's compression extensions for ours (or none) once Spark has
+     * built the /ws context, before the server accepts connections.
+     * The extension registry is looked up as a bean of the factory because its
+     * getter, getExtensionFactory(), is deprecated.
+     */
+    static void install(Server server) {
+        server.addLifeCycleListener(new LifeCycle.Listener() {
+            @Override
+            public void lifeCycleStarting(LifeCycle event) {
+                for (Handler handler : server.getChildHandlersByClass(ServletContextHandler.class)) {
+                    Object configuration = ((ServletContextHandler) handler).getServletContext()
+                            .getAttribute(NativeWebSocketConfiguration.class.getName());
+                    if (configuration instanceof NativeWebSocketConfiguration) {
+                        configure(((NativeWebSocketConfiguration) configuration).getFactory()
+                                .getBean(WebSocketExtensionFactory.class));
+                    }
+                }
+            }
+        });
+    }
+
+    private static void configure(WebSocketExtensionFactory extensions) {
+        extensions.unregister(NAME);
+        extensions.unregister("deflate-frame");
+        extensions.unregister("x-webkit-deflate-frame");
+        if (!ENABLED) {
+            LOGGER.info("📦 WebSocket compression disabled");
+            return;
+        }
+        extensions.register(NAME, PerMessageDeflate.class);
+        LOGGER.info("📦 WebSocket permessage-deflate: messages >= {} bytes, level {}, context takeover {}",
+                    MIN_BYTES, LEVEL, CONTEXT_TAKEOVER ? "on" : "off");
+    }
+
+    /**
+     * The compression state of a connection, or null if it did not negotiate compression
+     */
+    static PerMessageDeflate of(Session session) {
+        if (session instanceof WebSocketSession) {
+            OutgoingFrames outgoing = ((WebSocketSession) session).getOutgoingHandler();
+            if (outgoing instanceof ExtensionStack) {
+                for (Extension extension : ((ExtensionStack) outgoing).getExtensions()) {
+                    if (extension instanceof PerMessageDeflate) {
+                        return (PerMessageDeflate) extension;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * One connection's side of permessage-deflate. Jetty hands it outgoing
+     * frames one at a time (the extension stack queues them) and incoming
+     * frames from the connection's reader, so neither direction needs locking.
+     */
+    public static final class PerMessageDeflate extends AbstractExtension {
+
+        private boolean compressOutgoing = true; // false if the client capped our window below zlib's
+        private boolean serverTakeover = CONTEXT_TAKEOVER;
+        private boolean clientTakeover = CONTEXT_TAKEOVER;
+
+        private Deflater deflater;     // held for the connection, or for one message when borrowed
+        private Inflater inflater;
+        private boolean deflaterHeld;
+        private boolean inflaterHeld;
+        private boolean outgoingCompressed; // current outbound message is being compressed
+        private boolean incomingCompressed; // current inbound message is being inflated
+        private int incomingLimit;
+        private long incomingSize;
+        private boolean counted;
+
+        // Written by the send path only, read by the stats endpoint
+        private volatile long rawBytes;
+        private volatile long wireBytes;
+
+        public PerMessageDeflate() {
+        }
+
+        @Override
+        public String getName() {
+            return NAME;
+        }
+
+        @Override
+        public boolean isRsv1User() {
+            return true;
+        }
+
+        /**
+         * Turn the client's offer into our answer
+         */
+        @Override
+        public void setConfig(ExtensionConfig offer) {
+            ExtensionConfig answer = new ExtensionConfig(NAME);
+            for (String parameter : offer.getParameterKeys()) {
+                switch (parameter) {
+                    case "server_no_context_takeover":
+                        serverTakeover = false;
+                        break;
+                    case "client_no_context_takeover":
+                        clientTakeover = false;
+                        break;
+                    case "server_max_window_bits":
+                        // java.util.zip always deflates with a 32 KB window: agree, then never compress
+                        int bits = offer.getParameter(parameter, 15);
+                        if (bits < 15) {
+                            compressOutgoing = false;
+                            answer.setParameter(parameter, bits);
+                        }
+                        break;
+                    default:
+                        break; // client_max_window_bits: any window inflates fine
+                }
+            }
+            if (!serverTakeover) {
+                answer.setParameter("server_no_context_takeover");
+            }
+            if (!clientTakeover) {
+                answer.setParameter("client_no_context_takeover");
+            }
+            super.setConfig(answer);
+            if (!counted) {
+                counted = true;
+                negotiated.increment();
+                active.incrementAndGet();
+            }
+        }
+
+        // ================================================================
+        // Outbound
+        // ================================================================
+
+        @Override
+        public void outgoingFrame(Frame frame, WriteCallback callback, BatchMode batchMode) {
+            byte opcode = frame.getOpCode();
+            if (OpCode.isControlFrame(opcode)) {
+                nextOutgoingFrame(frame, callback, batchMode);
+                return;
+            }
+            int length = frame.getPayloadLength();
+            if (opcode != OpCode.CONTINUATION) {
+                outgoingCompressed = compressOutgoing && length >= MIN_BYTES;
+                if (compressOutgoing && !outgoingCompressed) {
+                    skippedMessages.increment();
+                    skippedBytes.add(length);
+                }
+            }
+            if (!outgoingCompressed) {
+                nextOutgoingFrame(frame, callback, batchMode);
+                return;
+            }
+
+            ByteBuffer payload = frame.hasPayload() ? frame.getPayload() : ByteBuffer.allocate(0);
+            long started = System.nanoTime();
+            byte[] out = deflate(payload.slice(), frame.isFin());
+            deflateNanos.add(System.nanoTime() - started);
+
+            boolean whole = opcode != OpCode.CONTINUATION && frame.isFin();
+            if (whole && !serverTakeover && out.length >= length) {
+                // Fresh context per message, so nothing on the client depends on this one: send it as is
+                notSmaller.increment();
+                nextOutgoingFrame(frame, callback, batchMode);
+                return;
+            }
+
+            DataFrame compressed = new DataFrame(frame);
+            compressed.setRsv1(opcode != OpCode.CONTINUATION);
+            compressed.setPayload(ByteBuffer.wrap(out));
+            if (opcode != OpCode.CONTINUATION) {
+                compressedMessages.increment();
+            }
+            compressedRawBytes.add(length);
+            compressedWireBytes.add(out.length);
+            rawBytes += length;
+            wireBytes += out.length;
+            nextOutgoingFrame(compressed, callback, batchMode);
+        }
+
+        /**
+         * Deflate one frame's payload; the last frame of a message drops the
+         * 00 00 FF FF that every sync flush ends with (RFC 7692 7.2.1)
+         */
+        private byte[] deflate(ByteBuffer input, boolean fin) {
+            if (deflater == null) {
+                deflater = serverTakeover ? holdDeflater() : borrowDeflater();
+            }
+            deflater.setInput(input);
+            byte[] out = new byte[input.remaining() / 2 + 64];
+            int size = 0;
+            while (true) {
+                size += deflater.deflate(out, size, out.length - size, Deflater.SYNC_FLUSH);
+                if (size < out.length) {
+                    break; // room to spare means the flush is complete
+                }
+                out = Arrays.copyOf(out, out.length * 2);
+            }
+            if (fin) {
+                if (size >= TAIL.length && endsWithTail(out, size)) {
+                    size -= TAIL.length;
+                }
+                if (!serverTakeover) {
+                    release(deflater);
+                    deflater = null;
+                }
+            }
+            return Arrays.copyOf(out, size);
+        }
+
+        private static boolean endsWithTail(byte[] data, int size) {
+            for (int i = 0; i < TAIL.length; i++) {
+                if (data[size - TAIL.length + i] != TAIL[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // ================================================================
+        // Inbound
+        // ================================================================
+
+        @Override
+        public void incomingFrame(Frame frame) {
+            byte opcode = frame.getOpCode();
+            if (OpCode.isControlFrame(opcode)) {
+                nextIncomingFrame(frame);
+                return;
+            }
+            if (opcode != OpCode.CONTINUATION) {
+                incomingCompressed = frame.isRsv1();
+                incomingSize = 0;
+                incomingLimit = opcode == OpCode.TEXT
+                        ? getPolicy().getMaxTextMessageSize()
+                        : getPolicy().getMaxBinaryMessageSize();
+            } else if (frame.isRsv1()) {
+                throw new ProtocolException("RSV1 set on a continuation frame");
+            }
+            if (!incomingCompressed) {
+                nextIncomingFrame(frame);
+                return;
+            }
+
+            long started = System.nanoTime();
+            byte[] out = inflate(frame);
+            inflateNanos.add(System.nanoTime() - started);
+            inflatedWireBytes.add(frame.getPayloadLength());
+            inflatedRawBytes.add(out.length);
+            if (frame.isFin()) {
+                inflatedMessages.increment();
+            }
+
+            DataFrame inflated = new DataFrame(frame);
+            inflated.setRsv1(false);
+            inflated.setPayload(ByteBuffer.wrap(out));
+            nextIncomingFrame(inflated);
+        }
+
+        private byte[] inflate(Frame frame) {
+            if (inflater == null) {
+                inflater = clientTakeover ? holdInflater() : borrowInflater();
+            }
+            int length = frame.getPayloadLength();
+            byte[] input = new byte[length + (frame.isFin() ? TAIL.length : 0)];
+            if (length > 0) {
+                frame.getPayload().slice().get(input, 0, length);
+            }
+            if (frame.isFin()) {
+                System.arraycopy(TAIL, 0, input, length, TAIL.length);
+            }
+            inflater.setInput(input);
+
+            byte[] out = new byte[Math.max(64, length * 4)];
+            int size = 0;
+            try {
+                while (true) {
+                    int n = inflater.inflate(out, size, out.length - size);
+                    size += n;
+                    if (incomingLimit > 0 && incomingSize + size > incomingLimit) {
+                        throw new MessageTooLargeException("Inflated message exceeds " + incomingLimit + " bytes");
+                    }
+                    if (size == out.length) {
+                        out = Arrays.copyOf(out, out.length * 2);
+                    } else if (n == 0) {
+                        break; // input used up (room to spare, nothing more came out)
+                    }
+                }
+            } catch (DataFormatException e) {
+                throw new BadPayloadException("Corrupt deflate data: " + e.getMessage());
+            }
+            incomingSize += size;
+            if (frame.isFin() && !clientTakeover) {
+                release(inflater);
+                inflater = null;
+            }
+            return Arrays.copyOf(out, size);
+        }
+
+        // ================================================================
+        // zlib streams
+        // ================================================================
+
+        private Deflater holdDeflater() {
+            deflaterHeld = true;
+            retainedBytes.addAndGet(DEFLATER_BYTES);
+            return new Deflater(LEVEL, true);
+        }
+
+        private Inflater holdInflater() {
+            inflaterHeld = true;
+            retainedBytes.addAndGet(INFLATER_BYTES);
+            return new Inflater(true);
+        }
+
+        /**
+         * Free this connection's zlib streams when Jetty tears the connection down
+         */
+        @Override
+        protected void doStop() throws Exception {
+            if (deflater != null) {
+                if (deflaterHeld) {
+                    deflater.end();
+                    retainedBytes.addAndGet(-DEFLATER_BYTES);
+                } else {
+                    release(deflater);
+                }
+                deflater = null;
+            }
+            if (inflater != null) {
+                if (inflaterHeld) {
+                    inflater.end();
+                    retainedBytes.addAndGet(-INFLATER_BYTES);
+                } else {
+                    release(inflater);
+                }
+                inflater = null;
+            }
+            if (counted) {
+                counted = false;
+                active.decrementAndGet();
+            }
+            super.doStop();
+        }
+
+        /**
+         * Native memory this connection keeps between messages
+         */
+        public long getRetainedBytes() {
+            return (deflaterHeld ? DEFLATER_BYTES : 0) + (inflaterHeld ? INFLATER_BYTES : 0);
+        }
+
+        public boolean isContextTakeover() {
+            return serverTakeover;
+        }
+
+        /**
+         * Compressed / uncompressed bytes sent by this connection, 1.0 before anything was compressed
+         */
+        public double getRatio() {
+            long raw = rawBytes;
+            return raw > 0 ? (double) wireBytes / raw : 1.0;
+        }
+    }
+
+    private static Deflater borrowDeflater() {
+        Deflater deflater = idleDeflaters.poll();
+        return deflater != null ? deflater : new Deflater(LEVEL, true);
+    }
+
+    private static Inflater borrowInflater() {
+        Inflater inflater = idleInflaters.poll();
+        return inflater != null ? inflater : new Inflater(true);
+    }
+
+    private static void release(Deflater deflater) {
+        deflater.reset();
+        if (!idleDeflaters.offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    private static void release(Inflater inflater) {
+        inflater.reset();
+        if (!idleInflaters.offer(inflater)) {
+            inflater.end();
+        }
+    }
+
+    // ================================================================
+    // Metrics getters
+    // ================================================================
+
+    public static long getNegotiated() {
+        return negotiated.sum();
+    }
+
+    public static int getActive() {
+        return active.get();
+    }
+
+    /**
+     * Native memory held by connections between messages (context takeover)
+     */
+    public static long getRetainedBytes() {
+        return retainedBytes.get();
+    }
+
+    /**
+     * Native memory parked in the idle pool (no context takeover)
+     */
+    public static long getPooledBytes() {
+        return (long) idleDeflaters.size() * DEFLATER_BYTES + (long) idleInflaters.size() * INFLATER_BYTES;
+    }
+
+    public static long getCompressedMessages() {
+        return compressedMessages.sum();
+    }
+
+    public static long getCompressedRawBytes() {
+        return compressedRawBytes.sum();
+    }
+
+    public static long getCompressedWireBytes() {
+        return compressedWireBytes.sum();
+    }
+
+    /**
+     * Wire bytes / raw bytes over everything compressed so far (1.0 if nothing was)
+     */
+    public static double getRatio() {
+        long raw = compressedRawBytes.sum();
+        return raw > 0 ? (double) compressedWireBytes.sum() / raw : 1.0;
+    }
+
+    public static long getSkippedMessages() {
+        return skippedMessages.sum();
+    }
+
+    public static long getSkippedBytes() {
+        return skippedBytes.sum();
+    }
+
+    public static long getNotSmaller() {
+        return notSmaller.sum();
+    }
+
+    /**
+     * Time spent inside zlib compressing (pure CPU work, timed on the sending thread)
+     */
+    public static long getDeflateMicros() {
+        return deflateNanos.sum() / 1_000;
+    }
+
+    public static long getInflatedMessages() {
+        return inflatedMessages.sum();
+    }
+
+    public static long getInflatedWireBytes() {
+        return inflatedWireBytes.sum();
+    }
+
+    public static long getInflatedRawBytes() {
+        return inflatedRawBytes.sum();
+    }
+
+    public static long getInflateMicros() {
+        return inflateNanos.sum() / 1_000;
+    }
+}
@@ -1,8 +1,8 @@
 package com.mts;
 
-import java.io.IOException;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -13,13 +13,23 @@ import org.eclipse.jetty.websocket.api.annotations.OnWebSocketError;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketMessage;
 import org.eclipse.jetty.websocket.api.annotations.WebSocket;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.google.gson.JsonSyntaxException;
 
 /**
  * WebSocket Handler for Real-Time Chat
- * DIAGNOSTIC VERSION - Extensive logging for debugging
+ * Every connection belongs to one ChatRoom (the stream key it watches,
+ * from ws?room= or "room" on identify, default "stream") and chat is only
+ * fanned out to that room.
+ * Clients speak JSON text frames unless they negotiated the binary
+ * subprotocol (see ChatWireCodec); either way a message is decoded into the
+ * same InboundMessage and broadcast frames are built by ChatWireCodec.
+ * With a cluster bus configured (see ChatCluster), chat is also published
+ * to the other backends, and their chat is fanned out to the rooms here.
+ * Per-message diagnostics are logged at DEBUG (-Dmetastream.log.level=DEBUG)
+ * through the async appender, so the broadcast path never waits on the console.
  * 
  * Learning Outcomes:
  * LO7: Exception Handling - Comprehensive error recovery
@@ -27,8 +37,23 @@ import com.google.gson.JsonSyntaxException;
 @WebSocket
 public class WebSocketHandler {
     
-    private static final Map<Session, String> sessions = new ConcurrentHashMap<>();
-    private static final Gson gson = new Gson();
+    private static final Logger LOGGER = LoggerFactory.getLogger(WebSocketHandler.class);
+    private static final Map<Session, ClientConnection> sessions = new ConcurrentHashMap<>();
+    private static final Map<String, ChatRoom> rooms = new ConcurrentHashMap<>();
+    private static final FileLogger fileLogger = new FileLogger();
+    private static final ChatRateLimiter rateLimiter = new ChatRateLimiter();
+    private static final ChatCluster cluster = ChatCluster.fromConfig(WebSocketHandler::deliverRemote);
+    
+    // /api/metrics: decode time per inbound frame, fan-out time per chat message
+    private static final LatencyHistogram jsonParseTime = Metrics.histogram("metastream_ws_parse_seconds",
+            "Time to decode one inbound chat frame", "format", "json");
+    private static final LatencyHistogram binaryParseTime = Metrics.histogram("metastream_ws_parse_seconds",
+            "Time to decode one inbound chat frame", "format", "binary");
+    private static final LatencyHistogram fanOutTime = Metrics.histogram("metastream_ws_fanout_seconds",
+            "Time to number, encode and queue one chat message for every viewer in its room");
+    
+    // How many recent messages a (re)joining viewer gets when it sends no lastSeq
+    static final int REPLAY_COUNT = Math.max(0, Config.getInt("metastream.chat.replayCount", 50));
     
     /**
      * Handle new WebSocket connection
@@ -37,15 +62,21 @@ public class WebSocketHandler {
     @OnWebSocketConnect
     public void onConnect(Session session) {
         try {
-            sessions.put(session, "Anonymous");
-            System.out.println("📡 WebSocket connected: " + session.getRemoteAddress() + 
-                             " (Total: " + sessions.size() + ")");
-            System.out.println("🔍 [DEBUG] Session ID: " + session.hashCode());
-            System.out.println("🔍 [DEBUG] Protocol: " + session.getUpgradeRequest().getProtocolVersion());
+            ClientConnection connection = new ClientConnection(session);
+            connection.setAllowance(rateLimiter.open(session.getRemoteAddress(), connection));
+            connection.setBatching(wantsBatching(session));
+            joinRoom(connection, requestedRoom(session));
+            sessions.put(session, connection);
+            LOGGER.info("📡 WebSocket connected: {} to room {} (Total: {})",
+                        session.getRemoteAddress(), connection.getRoom().getName(), sessions.size());
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("🔍 Session ID: {}", session.hashCode());
+                LOGGER.debug("🔍 Protocol: {} ({})", session.getUpgradeRequest().getProtocolVersion(),
+                             connection.isBinaryProtocol() ? ChatWireCodec.BINARY_PROTOCOL : "json");
+            }
             
         } catch (Exception e) {
-            System.err.println("⚠️ Error in onConnect: " + e.getMessage());
-            e.printStackTrace();
+            LOGGER.warn("⚠️ Error in onConnect: {}", e.getMessage(), e);
         }
     }
     
@@ -55,67 +86,159 @@ public class WebSocketHandler {
      */
     @OnWebSocketMessage
     public void onMessage(Session session, String message) {
-        System.out.println("📥 [DEBUG] Received message from " + session.getRemoteAddress());
-        System.out.println("📥 [DEBUG] Message content: " + message);
+        final boolean debug = LOGGER.isDebugEnabled();
+        if (debug) {
+            LOGGER.debug("📥 Received message from {}", session.getRemoteAddress());
+            LOGGER.debug("📥 Message content: {}", message);
+        }
+        
+        ClientConnection connection = sessions.get(session);
+        if (connection == null) {
+            return; // frame raced with onClose
+        }
+        
+        // Flood guard first - a frame over the sender's limit is never decoded
+        boolean identify = connection.isIdentify(message);
+        if (!admit(connection, identify)) {
+            return;
+        }
         
         try {
-            // Parse JSON message
-            JsonObject json = gson.fromJson(message, JsonObject.class);
-            String type = json.has("type") && !json.get("type").isJsonNull() 
-                        ? json.get("type").getAsString() 
-                        : "unknown";
-            
-            System.out.println("🔍 [DEBUG] Message type: " + type);
-            
-            if ("identify".equals(type)) {
-                handleIdentify(session, json);
-            } else if ("chat".equals(type)) {
-                handleChat(session, json);
-            } else {
-                System.out.println("⚠️ [DEBUG] Unknown message type: " + type);
+            // Stream-decode only the fields we use into the connection's reusable holder
+            long decodeStart = System.nanoTime();
+            InboundMessage inbound = connection.decode(message);
+            jsonParseTime.recordSince(decodeStart);
+            if (identify && !admitDecoded(connection, inbound)) {
+                return;
             }
+            dispatch(connection, inbound);
             
         } catch (JsonSyntaxException e) {
-            System.err.println("❌ JSON parsing error: " + e.getMessage());
-            System.err.println("❌ Raw message was: " + message);
+            LOGGER.warn("❌ JSON parsing error from {}: {}", connection.getRemoteAddress(), e.getMessage());
+            if (debug) {
+                LOGGER.debug("❌ Raw message was: {}", message);
+            }
+            
+        } catch (Exception e) {
+            LOGGER.error("❌ Unexpected error in onMessage: {}", e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Handle incoming binary-protocol frames
+     * LO7: Exception Handling - a malformed frame is logged and dropped
+     */
+    @OnWebSocketMessage
+    public void onMessage(Session session, byte[] payload, int offset, int length) {
+        ClientConnection connection = sessions.get(session);
+        if (connection == null) {
+            return; // frame raced with onClose
+        }
+        LOGGER.debug("📥 Received {} byte binary frame from {}", length, connection.getRemoteAddress());
+        
+        if (!admit(connection, ChatWireCodec.isIdentify(payload, offset, length))) {
+            return;
+        }
+        
+        try {
+            long decodeStart = System.nanoTime();
+            InboundMessage inbound = connection.decode(payload, offset, length);
+            binaryParseTime.recordSince(decodeStart);
+            dispatch(connection, inbound);
+            
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("❌ Binary frame error from {}: {}", connection.getRemoteAddress(), e.getMessage());
             
         } catch (Exception e) {
-            System.err.println("❌ Unexpected error in onMessage: " + e.getMessage());
-            e.printStackTrace();
+            LOGGER.error("❌ Unexpected error in onMessage: {}", e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Sender limits for a frame that is about to be decoded: identify frames
+     * use their own small allowance, everything else spends chat tokens
+     * @return false if the frame was refused (the sender has been told)
+     */
+    private boolean admit(ClientConnection connection, boolean identify) {
+        ChatRateLimiter.Allowance allowance = connection.getAllowance();
+        ChatRateLimiter.Scope limited = identify
+                ? rateLimiter.checkIdentify(allowance)
+                : rateLimiter.checkSender(allowance);
+        if (limited != null) {
+            rejectTooFast(connection, limited);
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * A JSON frame admitted as identify that decoded as something else pays the chat limits after all
+     */
+    private boolean admitDecoded(ClientConnection connection, InboundMessage inbound) {
+        return InboundMessage.TYPE_IDENTIFY.equals(inbound.getType()) || admit(connection, false);
+    }
+    
+    private void dispatch(ClientConnection connection, InboundMessage inbound) {
+        String type = inbound.getType();
+        LOGGER.debug("🔍 Message type: {}", type);
+        
+        if (InboundMessage.TYPE_IDENTIFY.equals(type)) {
+            handleIdentify(connection, inbound);
+        } else if (InboundMessage.TYPE_CHAT.equals(type)) {
+            handleChat(connection, inbound);
+        } else {
+            LOGGER.debug("⚠️ Unknown message type: {}", type);
         }
     }
     
     /**
      * Handle user identification
      */
-    private void handleIdentify(Session session, JsonObject json) {
+    private void handleIdentify(ClientConnection connection, InboundMessage inbound) {
         try {
             String username = "Anonymous";
             
-            if (json.has("username") && !json.get("username").isJsonNull()) {
-                String rawUsername = json.get("username").getAsString().trim();
-                if (!rawUsername.isEmpty() && rawUsername.length() <= 50) {
-                    username = rawUsername;
-                }
+            // Codec already trimmed it and flagged anything over 50 chars
+            String rawUsername = inbound.getUsername();
+            if (rawUsername != null && !rawUsername.isEmpty()) {
+                username = rawUsername;
             }
             
-            sessions.put(session, username);
-            System.out.println("✅ User identified: " + username + " (" + session.getRemoteAddress() + ")");
+            connection.setUsername(username);
+            if (inbound.getBatch() != null) {
+                connection.setBatching(inbound.getBatch());
+            }
+            String room = inbound.getRoom();
+            if (room != null && !room.equals(connection.getRoom().getName())) {
+                if (SessionRegistry.isValidKey(room)) {
+                    joinRoom(connection, room);
+                } else {
+                    LOGGER.debug("⚠️ Invalid room '{}' from {}, staying in {}", room, username, connection.getRoom().getName());
+                }
+            }
+            LOGGER.info("✅ User identified: {} in room {} ({})", username, connection.getRoom().getName(), connection.getRemoteAddress());
             
-            // Send welcome message
-            JsonObject welcome = new JsonObject();
-            welcome.addProperty("type", "system");
-            welcome.addProperty("text", "Connected to MetaStream Live");
-            welcome.addProperty("timestamp", getCurrentTimestamp());
+            // Send welcome message - queued like any other frame so it stays ordered with broadcasts
+            connection.enqueue(ChatWireCodec.system("Connected to MetaStream Live", null, Instant.now()));
+            LOGGER.debug("📤 Queued welcome message to {}", username);
             
-            session.getRemote().sendString(gson.toJson(welcome));
-            System.out.println("📤 [DEBUG] Sent welcome message to " + username);
+            // Catch the viewer up on chat from before it joined: everything after lastSeq, or the
+            // last few messages when it has none from this history (a reconnect that landed on
+            // another backend). Anything newer is already reaching it live, so nothing is locked
+            // and the replay only holds up this viewer (clients place replayed chat by seq)
+            long replayThrough = connection.takeReplayThrough();
+            StreamSession streamSession = Main.getSessionRegistry().get(connection.getRoom().getName());
+            if (streamSession != null && replayThrough > 0) {
+                ChatHistory history = streamSession.getChatHistory();
+                long lastSeq = inbound.getLastSeq();
+                int replayed = history.isOwnSequence(lastSeq)
+                        ? history.replay(lastSeq, replayThrough, history.getCapacity(), connection::enqueue)
+                        : history.replay(0, replayThrough, REPLAY_COUNT, connection::enqueue);
+                LOGGER.debug("📤 Replayed {} messages to {} (lastSeq {})", replayed, username, lastSeq);
+            }
             
-        } catch (IOException e) {
-            System.err.println("❌ Failed to send welcome message: " + e.getMessage());
         } catch (Exception e) {
-            System.err.println("❌ Error in handleIdentify: " + e.getMessage());
-            e.printStackTrace();
+            LOGGER.error("❌ Error in handleIdentify: {}", e.getMessage(), e);
         }
     }
     
@@ -123,78 +246,122 @@ public class WebSocketHandler {
      * Handle chat message broadcast
      * LO7: Exception Handling
      */
-    private void handleChat(Session senderSession, JsonObject json) {
+    private void handleChat(ClientConnection sender, InboundMessage inbound) {
         try {
             // Extract and validate message fields
-            String author = sessions.getOrDefault(senderSession, "Anonymous");
-            
-            String text = "";
-            if (json.has("text") && !json.get("text").isJsonNull()) {
-                text = json.get("text").getAsString().trim();
-            }
+            String author = sender.getUsername();
             
             // If author is provided in message, use that (for dashboard messages)
-            if (json.has("author") && !json.get("author").isJsonNull()) {
-                String providedAuthor = json.get("author").getAsString().trim();
-                if (!providedAuthor.isEmpty()) {
-                    author = providedAuthor;
-                }
+            String providedAuthor = inbound.getAuthor();
+            if (providedAuthor != null && !providedAuthor.isEmpty()) {
+                author = providedAuthor;
             }
             
-            // Validate message
-            if (text.isEmpty()) {
-                System.out.println("⚠️ [DEBUG] Empty message from " + author + ", ignoring");
+            // Validate message - the codec has already trimmed and cut it to 500 code points
+            if (!inbound.hasText() || inbound.getText().length() == 0) {
+                LOGGER.debug("⚠️ Empty message from {}, ignoring", author);
                 return;
             }
             
-            if (text.length() > 500) {
-                text = text.substring(0, 500);
+            // Room-wide limit before any journal, escaping or fan-out work
+            ChatRoom room = sender.getRoom();
+            ChatRateLimiter.Scope limited = rateLimiter.checkRoom(sender.getAllowance(), room);
+            if (limited != null) {
+                rejectTooFast(sender, limited);
+                return;
             }
             
-            System.out.println("💬 Chat message from " + author + ": " + text);
+            String text = inbound.getText().toString();
             
-            // Sanitize text (prevent XSS)
-            text = escapeHtml(text);
+            LOGGER.debug("💬 Chat message from {}: {}", author, text);
             
-            // Create broadcast message
-            JsonObject broadcast = new JsonObject();
-            broadcast.addProperty("type", "chat");
-            broadcast.addProperty("author", author);
-            broadcast.addProperty("text", text);
-            broadcast.addProperty("timestamp", getCurrentTimestamp());
+            // LO8: File I/O - persisted by the journal's writer thread, not this one
+            fileLogger.logChat(author, text);
             
-            String broadcastJson = gson.toJson(broadcast);
-            System.out.println("📤 [DEBUG] Broadcasting to " + sessions.size() + " clients");
+            // Sanitize text (prevent XSS) - single pass, no copy when there is nothing to escape
+            text = ChatSanitizer.escapeHtml(text);
             
-            // Broadcast to all connected clients
-            int successCount = 0;
-            int failureCount = 0;
+            broadcastChat(room.getName(), room, author, text, Instant.now(), true);
             
-            for (Map.Entry<Session, String> entry : sessions.entrySet()) {
-                Session clientSession = entry.getKey();
-                String clientName = entry.getValue();
-                
-                try {
-                    if (clientSession.isOpen()) {
-                        clientSession.getRemote().sendString(broadcastJson);
-                        successCount++;
-                        System.out.println("  ✅ Sent to " + clientName);
-                    } else {
-                        System.out.println("  ⚠️ Session closed for " + clientName);
-                        failureCount++;
-                    }
-                } catch (IOException e) {
-                    System.err.println("  ❌ Failed to send to " + clientName + ": " + e.getMessage());
-                    failureCount++;
-                }
+        } catch (Exception e) {
+            LOGGER.error("❌ Error in handleChat: {}", e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Chat published by another node: same fan-out as local chat, minus
+     * the checks, journal and escaping its origin already did
+     */
+    static void deliverRemote(ClusterMessage message) {
+        ChatRoom room = rooms.get(message.getRoom());
+        if (room == null && Main.getSessionRegistry().get(message.getRoom()) == null) {
+            return; // no viewers of this room here, and no history to keep
+        }
+        broadcastChat(message.getRoom(), room, message.getAuthor(), message.getText(),
+                      Instant.ofEpochMilli(message.getEpochMillis()), false);
+    }
+    
+    /**
+     * Number, encode, record and queue one chat message for a room's viewers
+     * @param room local members, or null if nobody here is watching
+     * @param text already escaped
+     * @param local sent by a viewer on this node, so also published to the other backends
+     */
+    private static void broadcastChat(String roomName, ChatRoom room, String author, String text, Instant at,
+                                      boolean local) {
+        long start = System.nanoTime();
+        
+        // Sequence ids let reconnecting viewers ask for what they missed
+        StreamSession streamSession = Main.getSessionRegistry().get(roomName);
+        ChatHistory history = null;
+        if (streamSession != null) {
+            streamSession.incrementMessages();
+            history = streamSession.getChatHistory();
+        } else if (room == null) {
+            return; // nobody here to tell and nothing to record
+        }
+        long allocationMark = BroadcastStats.startMeasure();
+        OutboundFrame frame;
+        int successCount;
+        // One message at a time per room, so the sequence, every viewer's queue and a
+        // joining viewer's replay all agree on the order. The stream's history is the
+        // room's lock while it is live (it exists with or without viewers here)
+        synchronized (history != null ? history : room) {
+            long seq = history != null ? history.nextSequence() : 0;
+            
+            // Encode once per wire format - every recipient shares the same payload
+            frame = ChatWireCodec.chat(seq, at, author, text);
+            if (history != null) {
+                history.publish(seq, frame);
             }
             
-            System.out.println("📊 Broadcast complete: " + successCount + " success, " + failureCount + " failed");
+            // Hand the frame to the room's outbound queues - delivery happens asynchronously
+            successCount = room != null ? room.broadcast(frame) : 0;
             
-        } catch (Exception e) {
-            System.err.println("❌ Error in handleChat: " + e.getMessage());
-            e.printStackTrace();
+            // Other backends fan it out to their own viewers of this room. The cluster id is
+            // taken here so the other nodes see this room's messages in the order we did
+            if (local) {
+                cluster.publish(roomName, author, text, at.toEpochMilli());
+            }
         }
+        
+        BroadcastStats.record(successCount, frame.getPayloadLength(), allocationMark);
+        fanOutTime.recordSince(start);
+        LOGGER.debug("📊 Broadcast queued to {} in room {}", successCount, roomName);
+    }
+    
+    /**
+     * Tell a sender it is over a chat limit (at most once per notice interval)
+     */
+    private void rejectTooFast(ClientConnection connection, ChatRateLimiter.Scope scope) {
+        LOGGER.debug("🚦 {} chat limit hit by {} ({})", scope, connection.getUsername(), connection.getRemoteAddress());
+        if (!rateLimiter.shouldNotify(connection.getAllowance())) {
+            return;
+        }
+        String text = scope == ChatRateLimiter.Scope.ROOM
+                ? "Chat is busy right now - please wait a moment"
+                : "You're sending messages too fast - please slow down";
+        connection.enqueue(ChatWireCodec.system(text, scope.name().toLowerCase(), Instant.now()));
     }
     
     /**
@@ -204,22 +371,23 @@ public class WebSocketHandler {
     @OnWebSocketClose
     public void onClose(Session session, int statusCode, String reason) {
         try {
-            String username = sessions.remove(session);
-            
-            if (username == null) {
-                username = "Unknown";
+            ClientConnection connection = sessions.remove(session);
+            String username = connection != null ? connection.getUsername() : "Unknown";
+            if (connection != null) {
+                leaveRoom(connection);
+                rateLimiter.close(connection.getAllowance());
             }
             
-            System.out.println("🔌 WebSocket disconnected: " + username + 
-                             " (Remaining: " + sessions.size() + ")" +
-                             " [Code: " + statusCode + "]");
-            
             if (reason != null && !reason.isEmpty()) {
-                System.out.println("   Reason: " + reason);
+                LOGGER.info("🔌 WebSocket disconnected: {} (Remaining: {}) [Code: {}] Reason: {}",
+                            username, sessions.size(), statusCode, reason);
+            } else {
+                LOGGER.info("🔌 WebSocket disconnected: {} (Remaining: {}) [Code: {}]",
+                            username, sessions.size(), statusCode);
             }
             
         } catch (Exception e) {
-            System.err.println("⚠️ Error in onClose: " + e.getMessage());
+            LOGGER.warn("⚠️ Error in onClose: {}", e.getMessage());
         }
     }
     
@@ -229,56 +397,118 @@ public class WebSocketHandler {
      */
     @OnWebSocketError
     public void onError(Session session, Throwable error) {
-        String username = sessions.getOrDefault(session, "Unknown");
+        ClientConnection connection = sessions.get(session);
+        String username = connection != null ? connection.getUsername() : "Unknown";
         
-        System.out.println("🔍 [DEBUG] WebSocket error occurred for " + username);
-        System.out.println("🔍 [DEBUG] Error class: " + error.getClass().getName());
-        System.out.println("🔍 [DEBUG] Error message: " + error.getMessage());
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("🔍 WebSocket error occurred for {}", username);
+            LOGGER.debug("🔍 Error class: {}", error.getClass().getName());
+            LOGGER.debug("🔍 Error message: {}", error.getMessage());
+        }
         
         // Check if this is the harmless opcode 7 error
         if (error instanceof org.eclipse.jetty.websocket.api.ProtocolException) {
             String errorMsg = error.getMessage();
-            System.out.println("🔍 [DEBUG] ProtocolException detected");
+            LOGGER.debug("🔍 ProtocolException detected");
             
             if (errorMsg != null && (errorMsg.contains("Unknown opcode") || 
                                     errorMsg.contains("opcode: 7") ||
                                     errorMsg.contains("ping") || 
                                     errorMsg.contains("pong"))) {
                 // This is harmless - browser sent a close/ping/pong frame
-                System.out.println("✅ [DEBUG] Harmless protocol frame ignored (opcode 7 / ping / pong)");
+                LOGGER.debug("✅ Harmless protocol frame ignored (opcode 7 / ping / pong)");
                 return; // Don't disconnect or log as error
             }
         }
         
         // For all other errors, log them
-        System.err.println("❌ WebSocket error for " + username + ": " + error.getMessage());
+        // Only log the stack trace for non-IO errors (IO errors are common connection issues)
+        if (error instanceof java.io.IOException) {
+            LOGGER.warn("❌ WebSocket error for {}: {}", username, error.getMessage());
+        } else {
+            LOGGER.error("❌ WebSocket error for {}: {}", username, error.getMessage(), error);
+        }
+    }
+    
+    /**
+     * Move a connection into a room, creating the room on first use.
+     * Membership changes run inside the map's per-key lock so a room
+     * being removed as empty can never swallow a viewer that is joining it.
+     */
+    private static void joinRoom(ClientConnection connection, String name) {
+        leaveRoom(connection);
+        StreamSession streamSession = Main.getSessionRegistry().get(name);
+        ChatRoom joined;
+        if (streamSession != null) {
+            // Under the history's lock, so every message is either at or below the recorded
+            // head (replayed on identify) or fanned out to this viewer live - never both
+            ChatHistory history = streamSession.getChatHistory();
+            synchronized (history) {
+                joined = addToRoom(connection, name);
+                connection.setReplayThrough(history.getLastSequence());
+            }
+        } else {
+            joined = addToRoom(connection, name);
+            connection.setReplayThrough(0);
+        }
+        connection.setRoom(joined);
+        
+        if (streamSession != null) {
+            streamSession.viewerJoined();
+        }
+    }
+    
+    private static ChatRoom addToRoom(ClientConnection connection, String name) {
+        return rooms.compute(name, (key, room) -> {
+            ChatRoom target = room != null ? room : new ChatRoom(key);
+            target.add(connection);
+            return target;
+        });
+    }
+    
+    /**
+     * Take a connection out of its room and drop the room once nobody is left
+     */
+    private static void leaveRoom(ClientConnection connection) {
+        ChatRoom current = connection.getRoom();
+        if (current == null) {
+            return;
+        }
+        rooms.computeIfPresent(current.getName(), (key, room) -> {
+            room.remove(connection);
+            return room.isEmpty() ? null : room;
+        });
+        connection.setRoom(null);
         
-        // Only print stack trace for non-IO errors (IO errors are common connection issues)
-        if (!(error instanceof java.io.IOException)) {
-            error.printStackTrace();
+        StreamSession streamSession = Main.getSessionRegistry().get(current.getName());
+        if (streamSession != null) {
+            streamSession.viewerLeft();
         }
     }
     
     /**
-     * Get current timestamp in ISO format
+     * Room from ws://host/ws?room=<streamKey>, default stream if absent or invalid
      */
-    private String getCurrentTimestamp() {
-        return LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+    private String requestedRoom(Session session) {
+        Map<String, List<String>> params = session.getUpgradeRequest().getParameterMap();
+        List<String> values = params != null ? params.get("room") : null;
+        if (values == null || values.isEmpty() || !SessionRegistry.isValidKey(values.get(0))) {
+            return SessionRegistry.DEFAULT_STREAM_KEY;
+        }
+        return values.get(0);
     }
     
     /**
-     * Escape HTML to prevent XSS attacks
+     * Clients opt in to batch frames with ws://host/ws?batch=1 (or "batch": true on identify)
      */
-    private String escapeHtml(String text) {
-        if (text == null) {
-            return "";
+    private boolean wantsBatching(Session session) {
+        Map<String, List<String>> params = session.getUpgradeRequest().getParameterMap();
+        List<String> values = params != null ? params.get("batch") : null;
+        if (values == null || values.isEmpty()) {
+            return false;
         }
-        return text.replace("&", "&amp;")
-                   .replace("<", "&lt;")
-                   .replace(">", "&gt;")
-                   .replace("\"", "&quot;")
-                   .replace("'", "&#x27;")
-                   .replace("/", "&#x2F;");
+        String value = values.get(0);
+        return "1".equals(value) || "true".equalsIgnoreCase(value);
     }
     
     /**
@@ -287,4 +517,30 @@ public class WebSocketHandler {
     public static int getActiveSessionCount() {
         return sessions.size();
     }
+    
+    /**
+     * Live view of chat rooms and their members
+     */
+    public static Collection<ChatRoom> getRooms() {
+        return rooms.values();
+    }
+    
+    public static ChatRoom getRoom(String name) {
+        return rooms.get(name);
+    }
+    
+    public static ChatRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+    
+    public static ChatCluster getCluster() {
+        return cluster;
+    }
+    
+    /**
+     * Live view of connected clients (queue depth and drop counters)
+     */
+    public static Collection<ClientConnection> getConnections() {
+        return sessions.values();
+    }
 }
\ No newline at end of file
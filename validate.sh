@@ -132,8 +132,8 @@ if [ -f "pom.xml" ]; then
         test_fail "Gson dependency missing from pom.xml"
     fi
     
-    if grep -q "slf4j-simple" pom.xml; then
-        test_pass "SLF4J logging configured"
+    if grep -q "logback-classic" pom.xml; then
+        test_pass "SLF4J logging configured (Logback)"
     else
         test_fail "SLF4J dependency missing from pom.xml"
     fi